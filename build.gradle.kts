@@ -20,10 +20,14 @@ repositories {
     }
 }
 
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
+
 intellij {
     version.set("2023.3.6")
     type.set("IU") // Target IDE Platform - IntelliJ IDEA Ultimate
-    plugins.set(listOf("java"))
+    plugins.set(listOf("java", "Git4Idea"))
     updateSinceUntilBuild.set(false)
 }
 
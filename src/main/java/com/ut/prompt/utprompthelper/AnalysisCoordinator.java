@@ -0,0 +1,136 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 同一项目中每一类变更分析同时最多只运行一次。
+ * 工具窗口按钮、Tools 菜单和右键菜单都通过这里启动分析：重复点击时，范围相同的请求并入正在进行的分析，
+ * 结果只展示一次；同一类中范围不同的新请求会取消正在进行的分析，避免多个 git 进程同时争抢磁盘。
+ * 不同类的分析互不影响，例如分析单个文件不会打断正在进行的全项目分析。
+ * 只在 EDT 上调用。
+ */
+@Service(Service.Level.PROJECT)
+public final class AnalysisCoordinator {
+
+    // 分析的类别
+    public static final String KIND_PROJECT = "project";
+    public static final String KIND_FILE = "file";
+
+    private static final Logger LOG = Logger.getInstance(AnalysisCoordinator.class);
+
+    private final Project project;
+    // 类别 -> 正在进行的分析
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    public AnalysisCoordinator(Project project) {
+        this.project = project;
+    }
+
+    public static AnalysisCoordinator getInstance(Project project) {
+        return project.getService(AnalysisCoordinator.class);
+    }
+
+    /**
+     * 提交一次分析；key 相同的分析正在进行时直接并入，否则取消同一类中正在进行的分析后启动新的任务。
+     * 分析被取消（包括被新的分析取代）时调用 onCancel
+     */
+    public void submit(@NotNull String kind,
+                       @NotNull String key,
+                       @NotNull String title,
+                       @NotNull DiffAnalysisTask.Analysis analysis,
+                       @NotNull Consumer<ChangeSet> onResult,
+                       @NotNull Consumer<Throwable> onError,
+                       @NotNull Runnable onCancel) {
+        Flight current = flights.get(kind);
+        if (current != null) {
+            if (current.key.equals(key) && !current.isCanceled()) {
+                current.joined++;
+                LOG.debug("Joined in-flight analysis " + key + " (" + current.joined + " duplicate requests)");
+                return;
+            }
+            LOG.debug("Cancelled analysis " + current.key + ", superseded by " + key);
+            current.cancel();
+        }
+
+        Flight flight = new Flight(key);
+        flights.put(kind, flight);
+        new DiffAnalysisTask(project, title, analysis, onResult, onError, onCancel) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                flight.start(indicator);
+                indicator.checkCanceled();
+                AnalysisPrewarmer.getInstance(project).awaitOrCancel(flight.key, indicator);
+                super.run(indicator);
+            }
+
+            @Override
+            public void onFinished() {
+                flights.remove(kind, flight);
+            }
+        }.queue();
+    }
+
+    /**
+     * key 对应的分析是否正在进行
+     */
+    public boolean isInFlight(@NotNull String key) {
+        for (Flight flight : flights.values()) {
+            if (flight.key.equals(key) && !flight.isCanceled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取消 key 对应的分析，例如展示进度的对话框被关闭时；key 不同时不做任何事
+     */
+    public void cancel(@NotNull String key) {
+        for (Flight flight : flights.values()) {
+            if (flight.key.equals(key)) {
+                LOG.debug("Cancelled analysis " + key);
+                flight.cancel();
+            }
+        }
+    }
+
+    /**
+     * 一次正在进行的分析；任务可能在开始运行前就被取代，此时在拿到进度指示器时立即取消
+     */
+    private static final class Flight {
+        private final String key;
+        private ProgressIndicator indicator;
+        private boolean canceled;
+        private int joined;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        synchronized void start(ProgressIndicator indicator) {
+            this.indicator = indicator;
+            if (canceled) {
+                indicator.cancel();
+            }
+        }
+
+        synchronized void cancel() {
+            canceled = true;
+            if (indicator != null) {
+                indicator.cancel();
+            }
+        }
+
+        synchronized boolean isCanceled() {
+            return canceled || (indicator != null && indicator.isCanceled());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ut.prompt.utprompthelper;
+
+/**
+ * 接收分析过程中逐个文件产生的结果，用于在分析完成前就开始展示。
+ * 并行分片和多个 Git 根目录时回调来自多个工作线程，实现需要线程安全。
+ * 直接命中结果缓存时不会收到任何回调，只能拿到最终结果。
+ */
+public interface AnalysisListener {
+
+    AnalysisListener NONE = new AnalysisListener() {
+    };
+
+    /**
+     * 预扫描得到了将要分析的文件数；多个根目录时每个根目录调用一次，数量应累加
+     */
+    default void filesPlanned(int fileCount) {
+    }
+
+    /**
+     * 一个文件分析完成；ranges 为空表示该文件没有需要测试的变更
+     */
+    default void fileAnalyzed(String path, ChangeRanges ranges) {
+    }
+
+    /**
+     * 路径加上前缀后再转发给当前监听器，用于多个 Git 根目录
+     */
+    default AnalysisListener withPathPrefix(String prefix) {
+        if (prefix.isEmpty() || this == NONE) {
+            return this;
+        }
+        AnalysisListener delegate = this;
+        return new AnalysisListener() {
+            @Override
+            public void filesPlanned(int fileCount) {
+                delegate.filesPlanned(fileCount);
+            }
+
+            @Override
+            public void fileAnalyzed(String path, ChangeRanges ranges) {
+                delegate.fileAnalyzed(prefix + path, ranges);
+            }
+        };
+    }
+}
@@ -0,0 +1,166 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.BranchChangeListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 在项目打开和切换分支后，于后台以低优先级预先计算全局范围的变更分析，结果写入 {@link DiffResultCache}，
+ * 之后点击"获取UT提示词"时通常可以直接使用缓存。
+ * 省电模式下不预热；索引期间（dumb mode）等索引完成后再开始。用户发起的分析会等待同一范围的预热完成，
+ * 范围不同时取消预热。
+ */
+@Service(Service.Level.PROJECT)
+public final class AnalysisPrewarmer implements Disposable {
+
+    // 事件发生后稍等片刻再开始，连续的分支切换只预热一次
+    private static final long DELAY_MILLIS = 2000;
+    private static final Logger LOG = Logger.getInstance(AnalysisPrewarmer.class);
+
+    private final Project project;
+    // 同一时间只运行一次预热
+    private final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("UTPrompt Prewarm", 1);
+    private ScheduledFuture<?> pending;
+    private Future<?> running;
+    private ProgressIndicator runningIndicator;
+    private String runningKey;
+
+    public AnalysisPrewarmer(Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(BranchChangeListener.VCS_BRANCH_CHANGED, new BranchChangeListener() {
+            @Override
+            public void branchWillChange(@NotNull String branchName) {
+            }
+
+            @Override
+            public void branchHasChanged(@NotNull String branchName) {
+                schedule();
+            }
+        });
+    }
+
+    public static AnalysisPrewarmer getInstance(Project project) {
+        return project.getService(AnalysisPrewarmer.class);
+    }
+
+    /**
+     * 安排一次预热；已经安排但尚未开始的预热会被替换，正在进行的预热会被取消
+     */
+    public synchronized void schedule() {
+        if (!SimplePromptConfig.getInstance().isPrewarm()) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        cancelRunning();
+        pending = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+            () -> DumbService.getInstance(project).runWhenSmart(this::start), DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 用户发起分析前调用：同一范围的预热正在进行时等待它完成，使分析直接命中缓存；范围不同时取消预热
+     */
+    void awaitOrCancel(String key, ProgressIndicator indicator) {
+        Future<?> future;
+        synchronized (this) {
+            if (running == null || running.isDone()) {
+                return;
+            }
+            if (!key.equals(runningKey)) {
+                cancelRunning();
+                return;
+            }
+            future = running;
+        }
+
+        indicator.setText2("正在等待后台预热完成...");
+        while (true) {
+            try {
+                future.get(100, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                indicator.checkCanceled();
+            } catch (CancellationException | ExecutionException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            }
+        }
+    }
+
+    private synchronized void start() {
+        pending = null;
+        if (project.isDisposed() || PowerSaveMode.isEnabled() || !SimplePromptConfig.getInstance().isPrewarm()) {
+            return;
+        }
+        List<VirtualFile> roots = GitRoots.find(project);
+        if (roots.isEmpty()) {
+            return;
+        }
+
+        PathRules pathRules = PathRules.fromConfig(SimplePromptConfig.getInstance());
+        String key = MultiRootAnalyzer.key(roots, pathRules);
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        runningKey = key;
+        runningIndicator = indicator;
+        running = executor.submit(() -> ProgressManager.getInstance().executeProcessUnderProgress(
+            () -> warmUp(roots, pathRules, key, indicator), indicator));
+    }
+
+    private void warmUp(List<VirtualFile> roots, PathRules pathRules, String key, ProgressIndicator indicator) {
+        Thread thread = Thread.currentThread();
+        int priority = thread.getPriority();
+        thread.setPriority(Thread.MIN_PRIORITY);
+        long startNanos = System.nanoTime();
+        try {
+            MultiRootAnalyzer.analyze(project, roots, pathRules, AnalysisListener.NONE, indicator);
+            LOG.debug("Prewarmed " + roots.size() + " git roots in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+        } catch (ProcessCanceledException e) {
+            // 被用户的分析或新的预热取代
+        } catch (Exception e) {
+            // 预热失败不影响之后的正常分析，例如基线分支不存在
+            LOG.debug("Prewarm failed for " + key.trim() + ": " + e.getMessage());
+        } finally {
+            thread.setPriority(priority);
+        }
+    }
+
+    private void cancelRunning() {
+        if (runningIndicator != null) {
+            runningIndicator.cancel();
+        }
+        running = null;
+        runningIndicator = null;
+        runningKey = null;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        cancelRunning();
+    }
+}
@@ -0,0 +1,187 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 两个 Action 共用的变更分析流程：先查项目级缓存，未命中时通过 DiffProvider 计算并写回缓存。
+ * 缓存命中但之后有文件被修改时，只重新比较这些文件并合并进上次的结果。
+ */
+public final class ChangeAnalyzer {
+
+    // 脏文件过多时增量比较不再划算，直接全量重算
+    private static final int MAX_INCREMENTAL_PATHS = 200;
+    private static final Logger LOG = Logger.getInstance(ChangeAnalyzer.class);
+
+    private ChangeAnalyzer() {
+    }
+
+    public static ChangeSet analyze(Project project,
+                                    DiffScope scope,
+                                    ProgressIndicator indicator) throws Exception {
+        return analyze(project, scope, AnalysisListener.NONE, indicator);
+    }
+
+    /**
+     * 重新计算的文件在分析完成前逐个通知 listener
+     */
+    public static ChangeSet analyze(Project project,
+                                    DiffScope scope,
+                                    AnalysisListener listener,
+                                    ProgressIndicator indicator) throws Exception {
+        SimplePromptConfig config = SimplePromptConfig.getInstance();
+        DiffResultCache cache = DiffResultCache.getInstance(project);
+        String baseBranch = config.getBaseBranch();
+        boolean useMergeBase = config.isUseMergeBase();
+        File workTree = new File(scope.getRootPath());
+
+        String commitsKey = GitRefs.stateKey(workTree, baseBranch);
+        // 影响结果的开关和行数上限也是缓存键的一部分
+        String stateKey = commitsKey == null ? null
+            : commitsKey + (useMergeBase ? ":merge-base" : "") + (config.isSemanticFilter() ? ":semantic" : "")
+                + ":limits=" + config.getMaxFileChangedLines() + "/" + config.getMaxTotalChangedLines();
+        // 先开始记录文件变化再读缓存，读取之后的修改一定会随结果保存为脏文件
+        DiffResultCache.Computation computation = cache.begin(scope);
+        ChangeSet changes;
+        try {
+            DiffResultCache.CachedResult cached = stateKey == null ? null : cache.get(scope, stateKey);
+            if (cached != null && cached.isUpToDate()) {
+                return cached.getChanges();
+            }
+
+            String baseRef = useMergeBase ? resolveMergeBase(cache, workTree, baseBranch, commitsKey, indicator) : baseBranch;
+
+            boolean incremental = cached != null && cached.getDirtyPaths().size() <= MAX_INCREMENTAL_PATHS;
+            if (scope.getPath() == null) {
+                DiffProvider provider = DiffProvider.forRoot(project, scope.getRoot());
+                indicator.setText2("正在统计变更规模...");
+                List<ChangedFile> changedFiles = provider.listChangedFiles(baseRef, scope.getPathRules(), indicator);
+                DiffPlan plan = plan(changedFiles);
+                if (incremental && !cutsByTotalBudget(plan)) {
+                    // 用脏文件的新结果替换旧结果；超过单文件上限的文件与全量分析一样不再出现在结果中
+                    Set<String> dirtyPaths = cached.getDirtyPaths();
+                    List<String> paths = plannedPaths(plan, dirtyPaths);
+                    ChangeSet updated = paths.isEmpty() ? ChangeSet.EMPTY : diff(provider, scope, baseRef, paths, listener, indicator);
+                    changes = cached.getChanges().replace(dirtyPaths, updated);
+                } else {
+                    changes = diffAll(provider, scope, baseRef, plan, listener, indicator);
+                }
+                changes = changes.withSkippedFiles(plan.getSkippedFiles());
+            } else if (incremental) {
+                // 单个文件的分析不受行数上限限制，脏文件直接重新比较
+                Set<String> dirtyPaths = cached.getDirtyPaths();
+                DiffProvider provider = DiffProvider.forRoot(project, scope.getRoot());
+                changes = cached.getChanges().replace(dirtyPaths, diff(provider, scope, baseRef, dirtyPaths, listener, indicator));
+            } else {
+                changes = diff(DiffProvider.forRoot(project, scope.getRoot()), scope, baseRef, scope.getPaths(), listener, indicator);
+            }
+
+            if (stateKey != null) {
+                cache.put(computation, stateKey, changes);
+            }
+        } finally {
+            cache.end(computation);
+        }
+        ClassificationCache.getInstance().flush();
+        return changes;
+    }
+
+    /**
+     * 当前分支与基线分支的分叉点；HEAD 与基线分支的提交不变时直接使用缓存的结果
+     */
+    private static String resolveMergeBase(DiffResultCache cache, File workTree, String baseBranch, String commitsKey,
+                                           ProgressIndicator indicator) throws Exception {
+        String mergeBase = commitsKey == null ? null : cache.getMergeBase(commitsKey);
+        if (mergeBase == null) {
+            mergeBase = new GitCliDiffProvider(workTree).mergeBase(baseBranch, indicator);
+            if (commitsKey != null) {
+                cache.putMergeBase(commitsKey, mergeBase);
+            }
+        }
+        return mergeBase;
+    }
+
+    /**
+     * 全量分析与增量分析共用的计划：单文件上限和总预算都按所有变更文件计算
+     */
+    private static DiffPlan plan(List<ChangedFile> changedFiles) {
+        SimplePromptConfig config = SimplePromptConfig.getInstance();
+        DiffPlan plan = DiffPlan.create(changedFiles, config.getMaxFileChangedLines(), config.getMaxTotalChangedLines(),
+            Runtime.getRuntime().availableProcessors());
+        for (ChangedFile skipped : plan.getSkippedFiles()) {
+            LOG.info("Skipped " + skipped.getPath() + " (+" + skipped.getAdded() + " -" + skipped.getRemoved() + "), over diff budget");
+        }
+        return plan;
+    }
+
+    /**
+     * 总预算是否截掉了不超过单文件上限的文件。此时脏文件的行数变化会改变其他文件是否入选，
+     * 只重新比较脏文件的结果与全量分析不一致
+     */
+    private static boolean cutsByTotalBudget(DiffPlan plan) {
+        int maxFileLines = SimplePromptConfig.getInstance().getMaxFileChangedLines();
+        for (ChangedFile skipped : plan.getSkippedFiles()) {
+            if (maxFileLines <= 0 || skipped.getAdded() + skipped.getRemoved() <= maxFileLines) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 脏文件中被计划选中的路径（包括重命名前的路径）
+     */
+    private static List<String> plannedPaths(DiffPlan plan, Set<String> dirtyPaths) {
+        List<String> paths = new ArrayList<>();
+        for (ChangedFile file : plan.getFiles()) {
+            if (dirtyPaths.contains(file.getPath()) || (file.getOldPath() != null && dirtyPaths.contains(file.getOldPath()))) {
+                paths.add(file.getPath());
+                if (file.getOldPath() != null) {
+                    paths.add(file.getOldPath());
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * 全量分析：按 numstat 预扫描得到的计划选择计算方式
+     */
+    private static ChangeSet diffAll(DiffProvider provider,
+                                     DiffScope scope,
+                                     String baseRef,
+                                     DiffPlan plan,
+                                     AnalysisListener listener,
+                                     ProgressIndicator indicator) throws Exception {
+        if (plan.getFiles().isEmpty()) {
+            return ChangeSet.EMPTY;
+        }
+        listener.filesPlanned(plan.getFiles().size());
+
+        if (plan.isSharded()) {
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            return ShardedDiffRunner.run(provider, baseRef, scope.getPathRules(), plan.getFiles(), parallelism, listener, indicator);
+        }
+        ChangeCollector collector = new ChangeCollector(indicator, plan.getFiles().size(), listener);
+        provider.diff(baseRef, plan.coversAllFiles() ? null : plan.getPaths(), scope.getPathRules(), collector, indicator);
+        return collector.getChanges();
+    }
+
+    private static ChangeSet diff(DiffProvider provider,
+                                  DiffScope scope,
+                                  String baseRef,
+                                  Collection<String> paths,
+                                  AnalysisListener listener,
+                                  ProgressIndicator indicator) throws Exception {
+        ChangeCollector collector = new ChangeCollector(indicator, listener);
+        provider.diff(baseRef, paths, scope.getPathRules(), collector, indicator);
+        return collector.getChanges();
+    }
+}
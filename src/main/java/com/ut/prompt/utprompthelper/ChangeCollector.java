@@ -0,0 +1,102 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 默认的 diff 消费者：对每个 hunk 做重要性判断，并按文件汇总变更的行号范围。
+ * diff 给出文件的 blob SHA 时先查持久化的分类缓存，命中则直接使用上次的结果，跳过该文件所有 hunk 的分类。
+ */
+public class ChangeCollector implements DiffListener {
+
+    private final ChangeSet.Builder changes = new ChangeSet.Builder();
+    private final ProgressIndicator indicator;
+    private final AtomicInteger processedFiles;
+    private final int totalFiles;
+    private final boolean semanticFilter;
+    private final AnalysisListener listener;
+    private final ClassificationCache cache = ClassificationCache.getInstance();
+
+    // 当前文件的缓存键（没有 blob SHA 时为 null）、是否命中，以及该文件的变更范围
+    private ClassificationCache.Key cacheKey;
+    private boolean cached;
+    private ChangeRanges fileRanges;
+
+    public ChangeCollector(ProgressIndicator indicator, AnalysisListener listener) {
+        this(indicator, new AtomicInteger(), 0, listener);
+    }
+
+    /**
+     * totalFiles 为预扫描得到的文件总数，0 表示未知
+     */
+    public ChangeCollector(ProgressIndicator indicator, int totalFiles, AnalysisListener listener) {
+        this(indicator, new AtomicInteger(), totalFiles, listener);
+    }
+
+    /**
+     * 并行分片时多个 collector 共用一个计数器，进度显示的是所有分片的合计
+     */
+    public ChangeCollector(ProgressIndicator indicator, AtomicInteger processedFiles, int totalFiles, AnalysisListener listener) {
+        this.indicator = indicator;
+        this.processedFiles = processedFiles;
+        this.totalFiles = totalFiles;
+        this.listener = listener;
+        this.semanticFilter = SimplePromptConfig.getInstance().isSemanticFilter();
+    }
+
+    @Override
+    public void onFile(String path) {
+        DiffAnalysisTask.reportFiles(indicator, processedFiles.incrementAndGet(), totalFiles);
+        cacheKey = null;
+        cached = false;
+        fileRanges = new ChangeRanges();
+    }
+
+    @Override
+    public void onBlobs(String path, String oldBlob, String newBlob) {
+        cacheKey = ClassificationCache.key(oldBlob, newBlob, semanticFilter ? ClassificationCache.OPTION_SEMANTIC : 0);
+        int[] ranges = cacheKey == null ? null : cache.get(cacheKey);
+        if (ranges != null) {
+            cached = true;
+            for (int i = 0; i < ranges.length; i += 2) {
+                changes.addRange(path, ranges[i], ranges[i + 1]);
+                fileRanges.add(ranges[i], ranges[i + 1]);
+            }
+        }
+    }
+
+    @Override
+    public boolean needsHunks(String path) {
+        return !cached;
+    }
+
+    @Override
+    public void onHunk(String path, int start, int count, List<String> lines) {
+        if (cached) {
+            return;
+        }
+        if (lines.isEmpty() || !HunkClassifier.isSignificant(lines)) {
+            return;
+        }
+        if (semanticFilter && SemanticFilter.isBehaviorNeutral(lines)) {
+            return;
+        }
+        changes.addRange(path, start, count);
+        fileRanges.add(start, count);
+    }
+
+    @Override
+    public void onFileEnd(String path) {
+        if (cacheKey != null && !cached) {
+            cache.put(cacheKey, fileRanges.toArray());
+        }
+        fileRanges.trim();
+        listener.fileAnalyzed(path, fileRanges);
+    }
+
+    public ChangeSet getChanges() {
+        return changes.build();
+    }
+}
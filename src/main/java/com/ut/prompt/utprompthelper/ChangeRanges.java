@@ -0,0 +1,134 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.Arrays;
+
+/**
+ * 一个文件中重要变更的行号范围，按 (起始行, 行数) 成对存放在一个 int 数组里。
+ * 只在收集阶段追加，交给 ChangeSet 之后不再修改；显示用的 "起始-结束" 文本在渲染时才生成。
+ */
+public final class ChangeRanges {
+
+    private int[] data;
+    private int size;
+
+    ChangeRanges() {
+        data = new int[8];
+    }
+
+    ChangeRanges(int[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    void add(int start, int count) {
+        if (size * 2 == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size * 2] = start;
+        data[size * 2 + 1] = count;
+        size++;
+    }
+
+    // 收集结束后去掉数组中未使用的容量
+    void trim() {
+        if (data.length > size * 2) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+    }
+
+    /**
+     * (起始行, 行数) 成对排列的副本
+     */
+    int[] toArray() {
+        return Arrays.copyOf(data, size * 2);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int index) {
+        return data[index * 2];
+    }
+
+    public int getLineCount(int index) {
+        return data[index * 2 + 1];
+    }
+
+    /**
+     * 范围的最后一行；纯删除的 hunk 行数为 0，结束行比起始行小 1
+     */
+    public int getEnd(int index) {
+        return data[index * 2] + data[index * 2 + 1] - 1;
+    }
+
+    /**
+     * 合并重叠、相邻以及间隔不超过 gap 行的范围，返回新的对象；gap 为负数或无可合并时返回自身。
+     * 范围先按起始行排序（git 输出本身有序，通常无需排序），再线性扫描合并。
+     */
+    public ChangeRanges coalesce(int gap) {
+        if (gap < 0 || size < 2) {
+            return this;
+        }
+
+        long[] sorted = null;
+        for (int i = 1; i < size; i++) {
+            if (getStart(i) < getStart(i - 1)) {
+                // 起始行放在高 32 位，排序后即按起始行有序
+                sorted = new long[size];
+                for (int j = 0; j < size; j++) {
+                    sorted[j] = ((long) getStart(j) << 32) | (getLineCount(j) & 0xFFFFFFFFL);
+                }
+                Arrays.sort(sorted);
+                break;
+            }
+        }
+
+        int[] merged = new int[size * 2];
+        int mergedSize = 0;
+        int currentStart = 0;
+        int currentEnd = 0;
+        for (int i = 0; i < size; i++) {
+            int start = sorted == null ? getStart(i) : (int) (sorted[i] >> 32);
+            int count = sorted == null ? getLineCount(i) : (int) sorted[i];
+            int end = start + count - 1;
+            if (i > 0 && (long) start <= (long) currentEnd + 1 + gap) {
+                currentEnd = Math.max(currentEnd, end);
+                continue;
+            }
+            if (i > 0) {
+                merged[mergedSize * 2] = currentStart;
+                merged[mergedSize * 2 + 1] = currentEnd - currentStart + 1;
+                mergedSize++;
+            }
+            currentStart = start;
+            currentEnd = end;
+        }
+        merged[mergedSize * 2] = currentStart;
+        merged[mergedSize * 2 + 1] = currentEnd - currentStart + 1;
+        mergedSize++;
+
+        if (mergedSize == size && sorted == null) {
+            return this;
+        }
+        return new ChangeRanges(Arrays.copyOf(merged, mergedSize * 2), mergedSize);
+    }
+
+    /**
+     * 以 "起始-结束, 起始-结束" 的格式追加到 sb
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getStart(i)).append('-').append(getEnd(i));
+        }
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
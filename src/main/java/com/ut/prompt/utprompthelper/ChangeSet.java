@@ -0,0 +1,188 @@
+package com.ut.prompt.utprompthelper;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 一次变更分析的结果：按 git diff 的顺序（路径顺序）排列的文件及其变更范围，以及因超出行数上限而没有分析的文件。
+ * 创建后不可修改，可以直接放进缓存并在多个对话框之间共享。
+ */
+public final class ChangeSet {
+
+    public static final ChangeSet EMPTY = new ChangeSet(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyList());
+
+    private final Map<String, ChangeRanges> files;
+    // 变更所在的方法（由 MethodLocator 填充），没有解析的文件不在其中
+    private final Map<String, List<String>> methods;
+    // 超出单文件上限或总预算而没有分析的文件，由 DiffPlan 决定
+    private final List<ChangedFile> skippedFiles;
+
+    private ChangeSet(Map<String, ChangeRanges> files, Map<String, List<String>> methods, List<ChangedFile> skippedFiles) {
+        this.files = files;
+        this.methods = methods;
+        this.skippedFiles = skippedFiles;
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public Set<String> getPaths() {
+        return files.keySet();
+    }
+
+    @Nullable
+    public ChangeRanges get(String path) {
+        return files.get(path);
+    }
+
+    /**
+     * 变更所在的类和方法，按行号顺序排列；未解析时为空列表
+     */
+    public List<String> getMethods(String path) {
+        List<String> labels = methods.get(path);
+        return labels == null ? Collections.emptyList() : labels;
+    }
+
+    /**
+     * 附带每个文件变更所在的方法，返回新的对象
+     */
+    public ChangeSet withMethods(Map<String, List<String>> methods) {
+        return isEmpty() ? this : new ChangeSet(files, Collections.unmodifiableMap(new LinkedHashMap<>(methods)), skippedFiles);
+    }
+
+    /**
+     * 因超出行数上限而没有分析的文件，按路径排序
+     */
+    public List<ChangedFile> getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    /**
+     * 附带没有分析的文件，返回新的对象
+     */
+    public ChangeSet withSkippedFiles(List<ChangedFile> skippedFiles) {
+        if (skippedFiles.isEmpty() && this.skippedFiles.isEmpty()) {
+            return this;
+        }
+        List<ChangedFile> sorted = new ArrayList<>(skippedFiles);
+        sorted.sort(Comparator.comparing(ChangedFile::getPath));
+        return new ChangeSet(files, methods, Collections.unmodifiableList(sorted));
+    }
+
+    /**
+     * 所有文件的变更范围总数
+     */
+    public int getRangeCount() {
+        int count = 0;
+        for (ChangeRanges ranges : files.values()) {
+            count += ranges.size();
+        }
+        return count;
+    }
+
+    /**
+     * 对每个文件合并间隔不超过 gap 行的变更范围，见 {@link ChangeRanges#coalesce(int)}
+     */
+    public ChangeSet coalesce(int gap) {
+        if (gap < 0) {
+            return this;
+        }
+        Map<String, ChangeRanges> coalesced = new LinkedHashMap<>();
+        for (Map.Entry<String, ChangeRanges> entry : files.entrySet()) {
+            coalesced.put(entry.getKey(), entry.getValue().coalesce(gap));
+        }
+        return isEmpty() ? this : new ChangeSet(Collections.unmodifiableMap(coalesced), methods, skippedFiles);
+    }
+
+    /**
+     * 用 updated 中的结果替换 paths 对应的旧结果，合并后按路径排序，与全量 git diff 的顺序一致
+     */
+    public ChangeSet replace(Collection<String> paths, ChangeSet updated) {
+        Map<String, ChangeRanges> sorted = new TreeMap<>(files);
+        sorted.keySet().removeAll(paths);
+        sorted.putAll(updated.files);
+        return of(sorted);
+    }
+
+    /**
+     * 给每个路径加上前缀（例如 Git 根目录相对于项目目录的路径），方法信息和没有分析的文件随之保留
+     */
+    public ChangeSet withPathPrefix(String prefix) {
+        if (prefix.isEmpty() || (isEmpty() && skippedFiles.isEmpty())) {
+            return this;
+        }
+        Map<String, ChangeRanges> prefixedFiles = new LinkedHashMap<>();
+        for (Map.Entry<String, ChangeRanges> entry : files.entrySet()) {
+            prefixedFiles.put(prefix + entry.getKey(), entry.getValue());
+        }
+        Map<String, List<String>> prefixedMethods = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : methods.entrySet()) {
+            prefixedMethods.put(prefix + entry.getKey(), entry.getValue());
+        }
+        List<ChangedFile> prefixedSkipped = new ArrayList<>();
+        for (ChangedFile file : skippedFiles) {
+            prefixedSkipped.add(new ChangedFile(prefix + file.getPath(), file.getOldPath() == null ? null : prefix + file.getOldPath(),
+                file.getAdded(), file.getRemoved(), file.isBinary()));
+        }
+        return new ChangeSet(Collections.unmodifiableMap(prefixedFiles), Collections.unmodifiableMap(prefixedMethods),
+            Collections.unmodifiableList(prefixedSkipped));
+    }
+
+    /**
+     * 合并互不重叠的若干部分（例如并行分片或多个 Git 根目录的结果），按路径排序
+     */
+    public static ChangeSet merge(Collection<ChangeSet> parts) {
+        Map<String, ChangeRanges> sorted = new TreeMap<>();
+        Map<String, List<String>> methods = new LinkedHashMap<>();
+        List<ChangedFile> skipped = new ArrayList<>();
+        for (ChangeSet part : parts) {
+            sorted.putAll(part.files);
+            methods.putAll(part.methods);
+            skipped.addAll(part.skippedFiles);
+        }
+        return of(sorted).withMethods(methods).withSkippedFiles(skipped);
+    }
+
+    private static ChangeSet of(Map<String, ChangeRanges> files) {
+        return files.isEmpty() ? EMPTY
+            : new ChangeSet(Collections.unmodifiableMap(new LinkedHashMap<>(files)), Collections.emptyMap(), Collections.emptyList());
+    }
+
+    /**
+     * 收集阶段使用：按 diff 输出的顺序逐个追加 hunk 的行号范围
+     */
+    public static final class Builder {
+        private final Map<String, ChangeRanges> files = new LinkedHashMap<>();
+
+        public void addRange(String path, int start, int count) {
+            ChangeRanges ranges = files.get(path);
+            if (ranges == null) {
+                // 同一路径会出现在多次分析和多个缓存条目里，驻留后只保留一份
+                ranges = new ChangeRanges();
+                files.put(path.intern(), ranges);
+            }
+            ranges.add(start, count);
+        }
+
+        public ChangeSet build() {
+            for (ChangeRanges ranges : files.values()) {
+                ranges.trim();
+            }
+            return of(files);
+        }
+    }
+}
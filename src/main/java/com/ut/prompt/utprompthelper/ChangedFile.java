@@ -0,0 +1,54 @@
+package com.ut.prompt.utprompthelper;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 预扫描得到的一个变更文件及其增删行数，用来在真正计算 diff 之前估算工作量
+ */
+public final class ChangedFile {
+
+    private final String path;
+    private final String oldPath;
+    private final int added;
+    private final int removed;
+    private final boolean binary;
+
+    public ChangedFile(String path, @Nullable String oldPath, int added, int removed, boolean binary) {
+        this.path = path;
+        this.oldPath = oldPath;
+        this.added = added;
+        this.removed = removed;
+        this.binary = binary;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 重命名前的路径，没有重命名时为 null
+     */
+    @Nullable
+    public String getOldPath() {
+        return oldPath;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * 分片时使用的权重，至少为 1，保证空变更也会被计入
+     */
+    public long weight() {
+        return Math.max(1, (long) added + removed);
+    }
+}
@@ -0,0 +1,304 @@
+package com.ut.prompt.utprompthelper;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 结果对话框中文件列表的表格模型：复选框、路径、变更处数与位置。
+ * 表格只渲染可见的行，单元格文本在渲染时才生成；过滤只改变可见行的下标数组，不创建组件。
+ * 分析进行中时文件逐批追加到末尾，分析完成后整体替换为最终结果。
+ * <p>
+ * 勾选状态用"默认值 + 带版本号的单独设置"表示：全选/全不选只修改默认值并递增版本号，
+ * 之前单独设置的状态随之失效，因此与文件数无关，是 O(1) 操作。
+ */
+final class ChangedFileTableModel extends AbstractTableModel {
+
+    static final int COLUMN_SELECTED = 0;
+    static final int COLUMN_PATH = 1;
+    static final int COLUMN_COUNT = 2;
+    static final int COLUMN_LOCATION = 3;
+
+    private static final String[] COLUMN_NAMES = {"", "文件", "变更", "位置 / 方法"};
+
+    private final List<Row> rows = new ArrayList<>();
+    private int rangeCount;
+    // 单独设置的勾选状态，只有 stamps[i] == version 时有效
+    private boolean[] explicit = new boolean[0];
+    private int[] stamps = new int[0];
+    private int version = 1;
+    private boolean defaultSelected = true;
+    private int selectedCount;
+    // 过滤后可见的行对应的文件下标，只有前 visibleCount 个有效
+    private int[] visible = new int[0];
+    private int visibleCount;
+    private String filter = "";
+
+    /**
+     * 空列表，文件随分析进度追加
+     */
+    ChangedFileTableModel() {
+    }
+
+    ChangedFileTableModel(ChangeSet changes) {
+        setRows(toRows(changes));
+    }
+
+    /**
+     * 文件总数（不受过滤影响）
+     */
+    int getFileCount() {
+        return rows.size();
+    }
+
+    /**
+     * 所有文件的变更范围总数
+     */
+    int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * 表格中第 row 行对应的文件下标
+     */
+    int getFileIndex(int row) {
+        return visible[row];
+    }
+
+    Row getRow(int fileIndex) {
+        return rows.get(fileIndex);
+    }
+
+    boolean isSelected(int fileIndex) {
+        return stamps[fileIndex] == version ? explicit[fileIndex] : defaultSelected;
+    }
+
+    int getSelectedCount() {
+        return selectedCount;
+    }
+
+    /**
+     * 在末尾追加文件，勾选状态取当前的默认值
+     */
+    void append(List<Row> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int first = rows.size();
+        rows.addAll(added);
+        ensureCapacity(rows.size());
+        if (defaultSelected) {
+            selectedCount += added.size();
+        }
+        int firstRow = visibleCount;
+        for (int i = first; i < rows.size(); i++) {
+            rangeCount += rows.get(i).ranges.size();
+            if (matches(rows.get(i))) {
+                addVisible(i);
+            }
+        }
+        if (visibleCount > firstRow) {
+            fireTableRowsInserted(firstRow, visibleCount - 1);
+        }
+    }
+
+    /**
+     * 用最终结果替换所有文件，已有文件保留原来的勾选状态
+     */
+    void replaceAll(ChangeSet changes) {
+        Map<String, Boolean> previous = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (isSelected(i) != defaultSelected) {
+                previous.put(rows.get(i).path, !defaultSelected);
+            }
+        }
+        setRows(toRows(changes));
+        for (int i = 0; i < rows.size(); i++) {
+            Boolean selected = previous.get(rows.get(i).path);
+            if (selected != null) {
+                setSelected(i, selected);
+            }
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * 勾选或取消所有可见的行；没有过滤条件时是 O(1) 操作
+     */
+    void setAllSelected(boolean selected) {
+        if (filter.isEmpty()) {
+            defaultSelected = selected;
+            version++;
+            selectedCount = selected ? rows.size() : 0;
+        } else {
+            for (int i = 0; i < visibleCount; i++) {
+                setSelected(visible[i], selected);
+            }
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * 只保留路径中包含 text（忽略大小写）的行
+     */
+    void setFilter(String text) {
+        String normalized = text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filter)) {
+            return;
+        }
+        filter = normalized;
+        refilter();
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return visibleCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        if (column == COLUMN_SELECTED) {
+            return Boolean.class;
+        }
+        return column == COLUMN_COUNT ? Integer.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == COLUMN_SELECTED;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int fileIndex = visible[row];
+        Row file = rows.get(fileIndex);
+        switch (column) {
+            case COLUMN_SELECTED:
+                return isSelected(fileIndex);
+            case COLUMN_PATH:
+                return file.path;
+            case COLUMN_COUNT:
+                return file.ranges.size();
+            default:
+                return file.describeLocation();
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (column == COLUMN_SELECTED) {
+            setSelected(visible[row], Boolean.TRUE.equals(value));
+            fireTableCellUpdated(row, column);
+        }
+    }
+
+    private void setRows(List<Row> replacement) {
+        rows.clear();
+        rows.addAll(replacement);
+        rangeCount = 0;
+        for (Row row : rows) {
+            rangeCount += row.ranges.size();
+        }
+        ensureCapacity(rows.size());
+        // 旧的单独设置全部失效
+        version++;
+        selectedCount = defaultSelected ? rows.size() : 0;
+        refilter();
+    }
+
+    private void refilter() {
+        visibleCount = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            if (matches(rows.get(i))) {
+                addVisible(i);
+            }
+        }
+    }
+
+    private boolean matches(Row row) {
+        return filter.isEmpty() || row.path.toLowerCase(Locale.ROOT).contains(filter);
+    }
+
+    private void addVisible(int fileIndex) {
+        if (visibleCount == visible.length) {
+            visible = Arrays.copyOf(visible, Math.max(16, visible.length * 2));
+        }
+        visible[visibleCount++] = fileIndex;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > explicit.length) {
+            int capacity = Math.max(size, explicit.length * 2);
+            explicit = Arrays.copyOf(explicit, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+    }
+
+    private void setSelected(int fileIndex, boolean selected) {
+        if (isSelected(fileIndex) != selected) {
+            selectedCount += selected ? 1 : -1;
+        }
+        explicit[fileIndex] = selected;
+        stamps[fileIndex] = version;
+    }
+
+    private static List<Row> toRows(ChangeSet changes) {
+        List<Row> result = new ArrayList<>(changes.getFileCount());
+        for (String path : changes.getPaths()) {
+            result.add(new Row(path, changes.get(path), changes.getMethods(path)));
+        }
+        return result;
+    }
+
+    /**
+     * 一个文件的分析结果；创建后不再修改，可以交给后台线程拼接预览
+     */
+    static final class Row {
+        final String path;
+        final ChangeRanges ranges;
+        final List<String> methods;
+        // 预览片段缓存（附带完整的代码摘录）及其中摘录的字节数，由 PromptPreview 在首次使用时生成，
+        // 分析线程和后台重建也会生成。先写 excerptBytes 再写 fragment，读到 fragment 的线程一定能看到对应的字节数；
+        // 字符串不可变，并发重复生成也没有问题
+        volatile String fragment;
+        volatile int excerptBytes;
+
+        Row(String path, ChangeRanges ranges) {
+            this(path, ranges, Collections.emptyList());
+        }
+
+        Row(String path, ChangeRanges ranges, List<String> methods) {
+            this.path = path;
+            this.ranges = ranges;
+            this.methods = methods;
+        }
+
+        /**
+         * 行号范围，有方法信息时在后面列出方法
+         */
+        String describeLocation() {
+            StringBuilder sb = new StringBuilder();
+            ranges.appendTo(sb);
+            if (!methods.isEmpty()) {
+                sb.append(" | ").append(String.join(", ", methods));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 持久化的 hunk 分类结果缓存，保存在 ~/.utprompthelper/classification.cache，IDE 重启后仍然有效。
+ * 键为 (旧 blob SHA, 新 blob SHA, 分类选项)，值为该文件中重要变更的行号范围；
+ * 同一对 blob 的 diff 是确定的，命中时可以跳过整个文件的分类。进程内比较（git4idea）时用新旧文本的 SHA-1 代替 blob SHA。
+ * <p>
+ * 文件格式：魔数、分类器版本、条目数，之后每个条目依次为两个长度前缀的 SHA 字节、选项字节、
+ * 范围数以及每个范围的起始行与行数（均为变长整数）。条目按最近使用顺序写出，超过容量时淘汰最久未用的条目。
+ */
+@Service(Service.Level.APP)
+public final class ClassificationCache implements Disposable {
+
+    // 修改 HunkClassifier、JavaLineLexer 或 SemanticFilter 的判断规则时递增，旧文件会被整体丢弃
+    static final int CLASSIFIER_VERSION = 3;
+    // 选项位：是否启用了语义过滤
+    static final int OPTION_SEMANTIC = 1;
+
+    private static final int MAGIC = 0x55544343; // "UTCC"
+    private static final long MAX_BYTES = 8L * 1024 * 1024;
+    private static final File CACHE_FILE = new File(System.getProperty("user.home") + "/.utprompthelper/classification.cache");
+    private static final Logger LOG = Logger.getInstance(ClassificationCache.class);
+
+    private final Object lock = new Object();
+    private final Object fileLock = new Object();
+    // 按访问顺序排列，最久未用的在最前面
+    private final LinkedHashMap<Key, int[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+    private boolean dirty;
+
+    static final class Key {
+        private final byte[] oldBlob;
+        private final byte[] newBlob;
+        private final int options;
+        private final int hash;
+
+        Key(byte[] oldBlob, byte[] newBlob, int options) {
+            this.oldBlob = oldBlob;
+            this.newBlob = newBlob;
+            this.options = options;
+            this.hash = 31 * (31 * Arrays.hashCode(oldBlob) + Arrays.hashCode(newBlob)) + options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return options == other.options
+                && Arrays.equals(oldBlob, other.oldBlob)
+                && Arrays.equals(newBlob, other.newBlob);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        int estimatedBytes() {
+            return oldBlob.length + newBlob.length + 3;
+        }
+    }
+
+    public static ClassificationCache getInstance() {
+        return ApplicationManager.getApplication().getService(ClassificationCache.class);
+    }
+
+    /**
+     * SHA 不是十六进制字符串时返回 null，此时不使用缓存
+     */
+    @Nullable
+    static Key key(String oldBlob, String newBlob, int options) {
+        byte[] oldBytes = fromHex(oldBlob);
+        byte[] newBytes = fromHex(newBlob);
+        return oldBytes == null || newBytes == null ? null : new Key(oldBytes, newBytes, options);
+    }
+
+    /**
+     * 返回 (起始行, 行数) 成对存放的范围数组，未命中时返回 null
+     */
+    @Nullable
+    int[] get(Key key) {
+        synchronized (lock) {
+            ensureLoaded();
+            return entries.get(key);
+        }
+    }
+
+    void put(Key key, int[] ranges) {
+        synchronized (lock) {
+            ensureLoaded();
+            int[] previous = entries.put(key, ranges);
+            if (previous != null) {
+                totalBytes -= estimatedBytes(key, previous);
+            }
+            totalBytes += estimatedBytes(key, ranges);
+            evict();
+            dirty = true;
+        }
+    }
+
+    /**
+     * 有新条目时写回磁盘；先写临时文件再替换，写到一半失败不会损坏已有的缓存
+     */
+    public void flush() {
+        List<Map.Entry<Key, int[]>> snapshot;
+        synchronized (lock) {
+            if (!dirty) {
+                return;
+            }
+            snapshot = new ArrayList<>(entries.entrySet());
+            dirty = false;
+        }
+
+        synchronized (fileLock) {
+            write(snapshot);
+        }
+    }
+
+    private static void write(List<Map.Entry<Key, int[]>> snapshot) {
+        File dir = CACHE_FILE.getParentFile();
+        File temp = new File(dir, CACHE_FILE.getName() + ".tmp");
+        try {
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(CLASSIFIER_VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<Key, int[]> entry : snapshot) {
+                    Key key = entry.getKey();
+                    out.writeByte(key.oldBlob.length);
+                    out.write(key.oldBlob);
+                    out.writeByte(key.newBlob.length);
+                    out.write(key.newBlob);
+                    out.writeByte(key.options);
+                    int[] ranges = entry.getValue();
+                    writeVarInt(out, ranges.length / 2);
+                    for (int value : ranges) {
+                        writeVarInt(out, value);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), CACHE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to save classification cache", e);
+            temp.delete();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        flush();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!CACHE_FILE.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(CACHE_FILE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != CLASSIFIER_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] oldBlob = new byte[in.readUnsignedByte()];
+                in.readFully(oldBlob);
+                byte[] newBlob = new byte[in.readUnsignedByte()];
+                in.readFully(newBlob);
+                int options = in.readUnsignedByte();
+                int[] ranges = new int[readVarInt(in) * 2];
+                for (int j = 0; j < ranges.length; j++) {
+                    ranges[j] = readVarInt(in);
+                }
+                Key key = new Key(oldBlob, newBlob, options);
+                entries.put(key, ranges);
+                totalBytes += estimatedBytes(key, ranges);
+            }
+        } catch (EOFException e) {
+            // 文件被截断，保留已经读到的条目
+            dirty = true;
+        } catch (IOException e) {
+            LOG.warn("Failed to load classification cache", e);
+            entries.clear();
+            totalBytes = 0;
+        }
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, int[]>> iterator = entries.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && iterator.hasNext()) {
+            Map.Entry<Key, int[]> eldest = iterator.next();
+            totalBytes -= estimatedBytes(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            dirty = true;
+        }
+    }
+
+    private static long estimatedBytes(Key key, int[] ranges) {
+        // 变长整数的行号通常占 2~3 个字节
+        return key.estimatedBytes() + 1 + ranges.length * 3L;
+    }
+
+    @Nullable
+    private static byte[] fromHex(String hex) {
+        if (hex.isEmpty() || hex.length() % 2 != 0 || hex.length() > 510) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
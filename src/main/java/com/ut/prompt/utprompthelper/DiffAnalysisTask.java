@@ -0,0 +1,88 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * 在后台线程执行 diff → 解析 → 分类流程的可取消任务。
+ * 结果、错误和取消回调都在 EDT 上执行，调用方可以直接弹出或关闭对话框。
+ * 从状态栏取消、被新的分析取代以及分析过程抛出 ProcessCanceledException 时都调用取消回调。
+ */
+public class DiffAnalysisTask extends Task.Backgroundable {
+
+    public interface Analysis {
+        ChangeSet run(@NotNull ProgressIndicator indicator) throws Exception;
+    }
+
+    private final Analysis analysis;
+    private final Consumer<ChangeSet> onResult;
+    private final Consumer<Throwable> onError;
+    private final Runnable onCancel;
+    private ChangeSet result;
+
+    public DiffAnalysisTask(Project project,
+                            String title,
+                            Analysis analysis,
+                            Consumer<ChangeSet> onResult,
+                            Consumer<Throwable> onError,
+                            Runnable onCancel) {
+        super(project, title, true);
+        this.analysis = analysis;
+        this.onResult = onResult;
+        this.onError = onError;
+        this.onCancel = onCancel;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(true);
+        try {
+            result = analysis.run(indicator);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new AnalysisException(ex);
+        }
+    }
+
+    @Override
+    public void onSuccess() {
+        if (result != null) {
+            onResult.accept(result);
+        }
+    }
+
+    @Override
+    public void onCancel() {
+        onCancel.run();
+    }
+
+    @Override
+    public void onThrowable(@NotNull Throwable error) {
+        onError.accept(error instanceof AnalysisException ? error.getCause() : error);
+    }
+
+    /**
+     * 更新进度条上的已处理文件数，totalFiles 大于 0 时显示确定的进度
+     */
+    public static void reportFiles(ProgressIndicator indicator, int processedFiles, int totalFiles) {
+        indicator.checkCanceled();
+        if (totalFiles > 0) {
+            indicator.setIndeterminate(false);
+            indicator.setFraction(Math.min(1.0, (double) processedFiles / totalFiles));
+            indicator.setText2("已处理 " + processedFiles + " / " + totalFiles + " 个文件");
+        } else {
+            indicator.setText2("已处理 " + processedFiles + " 个文件");
+        }
+    }
+
+    private static class AnalysisException extends RuntimeException {
+        AnalysisException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
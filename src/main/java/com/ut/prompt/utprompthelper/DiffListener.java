@@ -0,0 +1,40 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.List;
+
+/**
+ * 接收 {@link DiffStreamParser} 解析出的文件与 hunk 事件。
+ * 传入 {@link #onHunk} 的行列表只在回调期间有效，解析器会复用它来保持内存占用有界。
+ */
+public interface DiffListener {
+
+    /**
+     * 开始处理一个通过过滤的文件，path 为新版本中相对于仓库根目录的路径
+     */
+    void onFile(String path);
+
+    /**
+     * 紧跟在 {@link #onFile} 之后，给出新旧两个版本的 blob SHA（来自 diff 头部的 index 行，进程内比较时为内容的 SHA-1）；
+     * 没有 index 行或 SHA 未知（全 0）时不会调用
+     */
+    default void onBlobs(String path, String oldBlob, String newBlob) {
+    }
+
+    /**
+     * 在 {@link #onBlobs} 之后调用，返回 false 表示不再需要这个文件的 hunk，provider 可以跳过行级比较
+     */
+    default boolean needsHunks(String path) {
+        return true;
+    }
+
+    /**
+     * 一个完整的 hunk，start/count 对应新文件中的行号范围，lines 只包含以 + 或 - 开头的行
+     */
+    void onHunk(String path, int start, int count, List<String> lines);
+
+    /**
+     * 当前文件的所有 hunk 都已输出
+     */
+    default void onFileEnd(String path) {
+    }
+}
@@ -0,0 +1,98 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 根据 numstat 预扫描的结果决定如何计算完整 diff：文件较多时拆成多个分片并行计算；
+ * 总变更量超出预算时只分析预算内的文件，单个文件的变更行数超过上限时（通常是生成的代码）直接跳过。
+ */
+public final class DiffPlan {
+
+    // 变更文件数达到这个数量时才值得拆分成多个 git 进程并行计算
+    static final int SHARD_THRESHOLD = 64;
+
+    private final List<ChangedFile> files;
+    private final List<ChangedFile> skippedFiles;
+    private final boolean sharded;
+
+    private DiffPlan(List<ChangedFile> files, List<ChangedFile> skippedFiles, boolean sharded) {
+        this.files = files;
+        this.skippedFiles = skippedFiles;
+        this.sharded = sharded;
+    }
+
+    public static DiffPlan create(List<ChangedFile> changedFiles, int maxFileLines, long maxTotalLines, int parallelism) {
+        List<ChangedFile> candidates = new ArrayList<>();
+        List<ChangedFile> skipped = new ArrayList<>();
+        for (ChangedFile file : changedFiles) {
+            // 二进制文件没有 hunk；超过单文件上限的文件不值得让 git 计算 -w diff
+            if (file.isBinary()) {
+                continue;
+            }
+            if (maxFileLines > 0 && file.getAdded() + file.getRemoved() > maxFileLines) {
+                skipped.add(file);
+            } else {
+                candidates.add(file);
+            }
+        }
+
+        List<ChangedFile> selected = candidates;
+        if (maxTotalLines > 0) {
+            // 按路径顺序保留预算内的文件，结果在多次运行之间保持稳定
+            candidates.sort(Comparator.comparing(ChangedFile::getPath));
+            selected = new ArrayList<>();
+            long total = 0;
+            for (ChangedFile file : candidates) {
+                long lines = (long) file.getAdded() + file.getRemoved();
+                if (total + lines > maxTotalLines) {
+                    skipped.add(file);
+                    continue;
+                }
+                total += lines;
+                selected.add(file);
+            }
+        }
+
+        boolean sharded = parallelism > 1 && selected.size() >= SHARD_THRESHOLD;
+        return new DiffPlan(selected, Collections.unmodifiableList(skipped), sharded);
+    }
+
+    /**
+     * 需要计算完整 diff 的文件
+     */
+    public List<ChangedFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * 因超出单文件上限或总预算而没有分析的文件
+     */
+    public List<ChangedFile> getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * 没有跳过任何文件时可以直接用过滤规则的 pathspec，不必把所有路径逐个传给 git
+     */
+    public boolean coversAllFiles() {
+        return skippedFiles.isEmpty();
+    }
+
+    public List<String> getPaths() {
+        List<String> paths = new ArrayList<>();
+        for (ChangedFile file : files) {
+            paths.add(file.getPath());
+            if (file.getOldPath() != null) {
+                paths.add(file.getOldPath());
+            }
+        }
+        return paths;
+    }
+}
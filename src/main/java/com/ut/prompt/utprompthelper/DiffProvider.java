@@ -0,0 +1,60 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 计算工作区与基线分支之间差异的来源，两个 Action 共用。
+ * 优先使用 IDE 内置的 Git 插件在进程内计算，不可用时回退到 git 命令行。
+ */
+public interface DiffProvider {
+
+    /**
+     * 比较工作区与 baseRef，把符合 pathRules 的文件以 hunk 事件的形式交给 listener。
+     * paths 不为 null 时只比较这些文件（相对于仓库根目录的路径，调用方已按规则筛选过）。
+     */
+    void diff(@NotNull String baseRef,
+              @Nullable Collection<String> paths,
+              @NotNull PathRules pathRules,
+              @NotNull DiffListener listener,
+              @NotNull ProgressIndicator indicator) throws Exception;
+
+    /**
+     * 快速列出与 baseRef 相比有变化的文件及增删行数，不计算具体的 hunk
+     */
+    List<ChangedFile> listChangedFiles(@NotNull String baseRef,
+                                       @NotNull PathRules pathRules,
+                                       @NotNull ProgressIndicator indicator) throws Exception;
+
+    static DiffProvider forRoot(@NotNull Project project, @NotNull VirtualFile root) {
+        if (isGitPluginEnabled()) {
+            DiffProvider provider = Git4IdeaDiffProvider.create(project, root);
+            if (provider != null) {
+                return provider;
+            }
+        }
+        return new GitCliDiffProvider(new File(root.getPath()));
+    }
+
+    /**
+     * {@link #forRoot} 为 root 选用的 provider 是否比较 IDE 中的文档内容（包括未保存的修改），否则比较磁盘上的文件
+     */
+    static boolean comparesDocuments(@NotNull Project project, @NotNull VirtualFile root) {
+        return isGitPluginEnabled() && Git4IdeaDiffProvider.create(project, root) != null;
+    }
+
+    static boolean isGitPluginEnabled() {
+        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginId.getId("Git4Idea"));
+        return plugin != null && plugin.isEnabled();
+    }
+}
@@ -0,0 +1,341 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.BranchChangeListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.messages.MessageBusConnection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 项目级的变更分析结果缓存。
+ * 条目以分析范围为键，并记录计算时 HEAD 与基线分支的提交 SHA；
+ * 文件内容变化（VFS 事件、未保存的 Document 修改）只把受影响的文件记为脏文件，供下次分析增量重算；
+ * 编辑器中的修改会记下文件第一次被修改前的内容摘要，改回原样（例如撤销）后读取缓存时不再算作脏文件。
+ * 切换分支时清空全部条目。
+ * 计算期间修改过的范围内文件随结果一起保存为脏文件，因此边编辑边分析的结果也能保存，不在范围内的文件变化不影响结果。
+ */
+@Service(Service.Level.PROJECT)
+public final class DiffResultCache implements Disposable {
+
+    // 文件被修改前的内容未知，只能重新比较
+    private static final String UNKNOWN = "";
+    private static final int MAX_MERGE_BASES = 64;
+
+    private static class Entry {
+        final DiffScope scope;
+        final String stateKey;
+        final ChangeSet changes;
+        // 结果计算之后被修改过的文件（相对于根目录）-> 第一次修改前的内容摘要，下次分析时只需要重新比较这些文件
+        final Map<String, String> dirtyPaths = new ConcurrentHashMap<>();
+
+        Entry(DiffScope scope, String stateKey, ChangeSet changes) {
+            this.scope = scope;
+            this.stateKey = stateKey;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * 一次正在进行的计算，由 {@link #begin} 创建；记录计算期间被修改过的范围内文件
+     */
+    public static final class Computation {
+        private final DiffScope scope;
+        // 计算期间读到的是哪个版本无法确定，摘要都记为未知
+        private final Set<String> dirtyPaths = ConcurrentHashMap.newKeySet();
+        // 计算期间发生了无法定位到文件的变化（目录变化、切换分支），结果不能保存
+        private volatile boolean invalid;
+
+        Computation(DiffScope scope) {
+            this.scope = scope;
+        }
+    }
+
+    /**
+     * 缓存命中的结果：上次的变更集合，以及此后需要重新比较的文件
+     */
+    public static final class CachedResult {
+        private final ChangeSet changes;
+        private final Set<String> dirtyPaths;
+
+        CachedResult(ChangeSet changes, Set<String> dirtyPaths) {
+            this.changes = changes;
+            this.dirtyPaths = dirtyPaths;
+        }
+
+        public ChangeSet getChanges() {
+            return changes;
+        }
+
+        public Set<String> getDirtyPaths() {
+            return dirtyPaths;
+        }
+
+        public boolean isUpToDate() {
+            return dirtyPaths.isEmpty();
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // "HEAD SHA:基线 SHA" -> merge-base SHA，两个提交确定时分叉点不会变化；只保留最近用过的
+    private final Map<String, String> mergeBases = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_MERGE_BASES;
+        }
+    });
+    // 正在进行的计算
+    private final Set<Computation> computations = ConcurrentHashMap.newKeySet();
+
+    public DiffResultCache(Project project) {
+        MessageBusConnection connection = project.getMessageBus().connect(this);
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    boolean directory = isDirectory(event);
+                    if (directory && event instanceof VFileCreateEvent && isEmptyDirectory(event.getPath())) {
+                        // 新建的空目录（例如构建输出目录）里还没有被 Git 跟踪的文件，不影响结果
+                        continue;
+                    }
+                    invalidatePath(event.getPath(), directory, () -> UNKNOWN);
+                    if (event instanceof VFileMoveEvent) {
+                        invalidatePath(((VFileMoveEvent) event).getNewPath(), directory, () -> UNKNOWN);
+                    } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                        invalidatePath(((VFilePropertyChangeEvent) event).getNewPath(), directory, () -> UNKNOWN);
+                    }
+                }
+            }
+        });
+        connection.subscribe(BranchChangeListener.VCS_BRANCH_CHANGED, new BranchChangeListener() {
+            @Override
+            public void branchWillChange(@NotNull String branchName) {
+            }
+
+            @Override
+            public void branchHasChanged(@NotNull String branchName) {
+                invalidateAll();
+            }
+        });
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void beforeDocumentChange(@NotNull DocumentEvent event) {
+                Document document = event.getDocument();
+                VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+                if (file != null) {
+                    // 只有文件第一次变脏时才需要摘要，之后的按键不再计算
+                    String[] before = new String[1];
+                    invalidatePath(file.getPath(), false, () -> {
+                        if (before[0] == null) {
+                            before[0] = fingerprint(document.getImmutableCharSequence());
+                        }
+                        return before[0];
+                    });
+                }
+            }
+        }, this);
+    }
+
+    public static DiffResultCache getInstance(Project project) {
+        return project.getService(DiffResultCache.class);
+    }
+
+    /**
+     * 内容已经改回计算时原样的脏文件不再返回
+     */
+    @Nullable
+    public CachedResult get(DiffScope scope, String stateKey) {
+        Entry entry = entries.get(scope.key());
+        if (entry == null || !entry.stateKey.equals(stateKey)) {
+            return null;
+        }
+        // 在读操作中比较，Document 的修改与脏文件标记在同一个写操作中完成，不会在比较期间插入
+        ReadAction.compute(() -> {
+            for (Map.Entry<String, String> dirty : entry.dirtyPaths.entrySet()) {
+                if (isUnchanged(scope, dirty.getKey(), dirty.getValue())) {
+                    entry.dirtyPaths.remove(dirty.getKey(), dirty.getValue());
+                }
+            }
+            return null;
+        });
+        return new CachedResult(entry.changes, new TreeSet<>(entry.dirtyPaths.keySet()));
+    }
+
+    @Nullable
+    public String getMergeBase(String stateKey) {
+        return mergeBases.get(stateKey);
+    }
+
+    public void putMergeBase(String stateKey, String mergeBase) {
+        mergeBases.put(stateKey, mergeBase);
+    }
+
+    /**
+     * 开始一次计算，之后的文件变化都会记录下来；需要在读取缓存之前调用，结束时调用 {@link #end}
+     */
+    public Computation begin(DiffScope scope) {
+        Computation computation = new Computation(scope);
+        computations.add(computation);
+        return computation;
+    }
+
+    /**
+     * 保存计算结果，计算期间被修改过的文件记为脏文件；计算期间发生过无法定位到文件的变化时直接丢弃
+     */
+    public void put(Computation computation, String stateKey, ChangeSet changes) {
+        if (computation.invalid) {
+            return;
+        }
+        Entry entry = new Entry(computation.scope, stateKey, changes);
+        entries.put(computation.scope.key(), entry);
+        // 先保存条目再结束计算，之后的变化会直接记到条目上；结束前记到计算上的变化再合并一次
+        end(computation);
+        for (String path : computation.dirtyPaths) {
+            entry.dirtyPaths.put(path, UNKNOWN);
+        }
+        if (computation.invalid) {
+            entries.remove(computation.scope.key(), entry);
+        }
+    }
+
+    public void end(Computation computation) {
+        computations.remove(computation);
+    }
+
+    public void invalidateAll() {
+        for (Computation computation : computations) {
+            computation.invalid = true;
+        }
+        entries.clear();
+    }
+
+    private static boolean isDirectory(VFileEvent event) {
+        if (event instanceof VFileCreateEvent) {
+            return ((VFileCreateEvent) event).isDirectory();
+        }
+        VirtualFile file = event.getFile();
+        return file != null && file.isDirectory();
+    }
+
+    private static boolean isEmptyDirectory(String path) {
+        String[] children = new File(path).list();
+        return children != null && children.length == 0;
+    }
+
+    /**
+     * 文件磁盘上的内容和编辑器中的内容是否都与 fingerprint 一致；两种方式比较 diff 使用的都是其中之一
+     */
+    private static boolean isUnchanged(DiffScope scope, String relativePath, String fingerprint) {
+        if (UNKNOWN.equals(fingerprint)) {
+            return false;
+        }
+        VirtualFile file = scope.getRoot().findFileByRelativePath(relativePath);
+        if (file == null || !file.isValid()) {
+            return false;
+        }
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        if (document != null && FileDocumentManager.getInstance().isDocumentUnsaved(document)
+            && !fingerprint.equals(fingerprint(document.getImmutableCharSequence()))) {
+            return false;
+        }
+        return fingerprint.equals(fingerprint(LoadTextUtil.loadText(file)));
+    }
+
+    private static String fingerprint(CharSequence text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * fingerprint 在文件需要新记为脏文件时才调用
+     */
+    private void invalidatePath(String path, boolean directory, Supplier<String> fingerprint) {
+        // .git 目录下的变化（索引、引用）由提交 SHA 比较和分支切换事件处理
+        if (path == null || path.contains("/.git/") || path.endsWith("/.git")) {
+            return;
+        }
+        for (Computation computation : computations) {
+            String relativePath = relativePath(computation.scope, path);
+            if (relativePath == null) {
+                continue;
+            }
+            if (directory) {
+                computation.invalid |= containsScope(computation.scope, relativePath);
+            } else if (computation.scope.covers(relativePath)) {
+                computation.dirtyPaths.add(relativePath);
+            }
+        }
+        for (Entry entry : entries.values()) {
+            String relativePath = relativePath(entry.scope, path);
+            if (relativePath == null) {
+                continue;
+            }
+            if (directory) {
+                // 删除、移动或重命名目录时无法判断涉及哪些文件，可能包含分析范围内文件的条目整体失效
+                if (containsScope(entry.scope, relativePath)) {
+                    entries.remove(entry.scope.key(), entry);
+                }
+            } else if (entry.scope.covers(relativePath) && !entry.dirtyPaths.containsKey(relativePath)) {
+                // 已经是脏文件时保留第一次修改前的摘要
+                entry.dirtyPaths.putIfAbsent(relativePath, fingerprint.get());
+            }
+        }
+    }
+
+    /**
+     * path 相对于范围根目录的路径，不在根目录下时返回 null
+     */
+    @Nullable
+    private static String relativePath(DiffScope scope, String path) {
+        String rootPrefix = scope.getRootPath() + "/";
+        return path.startsWith(rootPrefix) ? path.substring(rootPrefix.length()) : null;
+    }
+
+    /**
+     * 目录 relativeDir 中是否可能包含范围内的文件
+     */
+    private static boolean containsScope(DiffScope scope, String relativeDir) {
+        String scopePath = scope.getPath();
+        return scopePath == null || scopePath.startsWith(relativeDir + "/");
+    }
+
+    @Override
+    public void dispose() {
+        entries.clear();
+        mergeBases.clear();
+        computations.clear();
+    }
+}
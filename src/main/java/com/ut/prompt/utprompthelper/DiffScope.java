@@ -0,0 +1,71 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 一次变更分析的范围：某个 Git 根目录下的全部文件，或其中的单个文件
+ */
+public final class DiffScope {
+
+    private final VirtualFile root;
+    private final String path;
+    private final PathRules pathRules;
+
+    private DiffScope(VirtualFile root, String path, PathRules pathRules) {
+        this.root = root;
+        this.path = path;
+        this.pathRules = pathRules;
+    }
+
+    public static DiffScope global(@NotNull VirtualFile root, @NotNull PathRules pathRules) {
+        return new DiffScope(root, null, pathRules);
+    }
+
+    public static DiffScope singleFile(@NotNull VirtualFile root, @NotNull String relativePath) {
+        return new DiffScope(root, relativePath, PathRules.ALL);
+    }
+
+    public VirtualFile getRoot() {
+        return root;
+    }
+
+    public String getRootPath() {
+        return root.getPath();
+    }
+
+    /**
+     * 单文件范围时为相对于根目录的路径，全局范围时为 null
+     */
+    @Nullable
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 传给 DiffProvider 的路径限制，全局范围时为 null
+     */
+    @Nullable
+    public Collection<String> getPaths() {
+        return path == null ? null : Collections.singletonList(path);
+    }
+
+    public PathRules getPathRules() {
+        return pathRules;
+    }
+
+    /**
+     * 判断根目录下的某个相对路径的变化是否会影响这个范围的分析结果
+     */
+    public boolean covers(String relativePath) {
+        return path == null ? pathRules.matches(relativePath) : path.equals(relativePath);
+    }
+
+    public String key() {
+        return getRootPath() + "|" + (path == null ? "*" + pathRules : path);
+    }
+}
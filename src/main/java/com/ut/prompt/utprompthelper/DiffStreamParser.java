@@ -0,0 +1,173 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.progress.ProgressManager;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 流式解析 git diff 输出的状态机。
+ * 逐行读取，只缓存当前 hunk 的变更行，因此内存占用与整个 diff 的大小无关。
+ */
+public class DiffStreamParser {
+
+    private final Predicate<String> fileFilter;
+
+    public DiffStreamParser(Predicate<String> fileFilter) {
+        this.fileFilter = fileFilter;
+    }
+
+    private static void notifyBlobs(DiffListener listener, String path, String blobs) {
+        int dots = blobs == null ? -1 : blobs.indexOf("..");
+        if (dots <= 0 || dots + 2 >= blobs.length()) {
+            return;
+        }
+        String oldBlob = blobs.substring(0, dots);
+        String newBlob = blobs.substring(dots + 2);
+        // 全 0 的 SHA 表示内容没有对应的对象（新增/删除的文件或尚未计算哈希），无法作为缓存键
+        if (isZero(oldBlob) || isZero(newBlob)) {
+            return;
+        }
+        listener.onBlobs(path, oldBlob, newBlob);
+    }
+
+    private static boolean isZero(String sha) {
+        for (int i = 0; i < sha.length(); i++) {
+            if (sha.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析整个 diff 流，返回解析到的文件数（包含被过滤掉的文件）
+     */
+    public int parse(BufferedReader reader, DiffListener listener) throws IOException {
+        List<String> hunkLines = new ArrayList<>();
+        String line;
+        String currentFile = null;  // 正在输出 hunk 的文件，null 表示跳过
+        String blobs = null;        // 当前文件头部 index 行中的 "旧SHA..新SHA"
+        boolean inHeader = false;
+        boolean inHunk = false;
+        int hunkStart = 0;
+        int hunkLinesCount = 0;
+        int files = 0;
+
+        while ((line = reader.readLine()) != null) {
+            ProgressManager.checkCanceled();
+            if (line.startsWith("diff --git ")) {
+                if (inHunk) {
+                    listener.onHunk(currentFile, hunkStart, hunkLinesCount, hunkLines);
+                }
+                if (currentFile != null) {
+                    listener.onFileEnd(currentFile);
+                }
+                files++;
+                currentFile = null;
+                blobs = null;
+                inHeader = true;
+                inHunk = false;
+                hunkLines.clear();
+            } else if (inHeader && line.startsWith("index ")) {
+                int space = line.indexOf(' ', 6);
+                blobs = space < 0 ? line.substring(6) : line.substring(6, space);
+            } else if (inHeader && line.startsWith("+++ ")) {
+                String newPath = stripPrefix(line.substring(4));
+                // 新路径为 /dev/null 表示文件被删除，没有可以测试的代码
+                if (newPath != null && fileFilter.test(newPath)) {
+                    currentFile = newPath;
+                    listener.onFile(currentFile);
+                    notifyBlobs(listener, currentFile, blobs);
+                }
+            } else if (line.startsWith("@@")) {
+                if (inHunk) {
+                    listener.onHunk(currentFile, hunkStart, hunkLinesCount, hunkLines);
+                    hunkLines.clear();
+                }
+                inHeader = false;
+                inHunk = false;
+                if (currentFile == null) {
+                    continue;
+                }
+                // 格式: @@ -oldStart[,oldCount] +newStart[,newCount] @@
+                int plus = line.indexOf(" +", 2);
+                if (plus < 0) {
+                    continue;
+                }
+                int rangeEnd = line.indexOf(' ', plus + 2);
+                String newRange = line.substring(plus + 2, rangeEnd < 0 ? line.length() : rangeEnd);
+                int comma = newRange.indexOf(',');
+                if (comma < 0) {
+                    hunkStart = Integer.parseInt(newRange);
+                    hunkLinesCount = 1;
+                } else {
+                    hunkStart = Integer.parseInt(newRange.substring(0, comma));
+                    hunkLinesCount = Integer.parseInt(newRange.substring(comma + 1));
+                }
+                inHunk = true;
+            } else if (inHunk && (line.startsWith("+") || line.startsWith("-"))) {
+                hunkLines.add(line);
+            }
+            // 上下文行、"\ No newline at end of file"、"--- a/..." 以及其它头部信息不影响当前 hunk
+            // 二进制文件和纯模式变更没有 "+++" 行，currentFile 保持为 null 即被跳过
+        }
+
+        if (inHunk) {
+            listener.onHunk(currentFile, hunkStart, hunkLinesCount, hunkLines);
+        }
+        if (currentFile != null) {
+            listener.onFileEnd(currentFile);
+        }
+        return files;
+    }
+
+    /**
+     * 去掉 "a/"、"b/" 前缀并还原 git 对特殊字符的引号转义，/dev/null 返回 null
+     */
+    static String stripPrefix(String path) {
+        int tab = path.indexOf('\t');
+        if (tab >= 0) {
+            path = path.substring(0, tab);
+        }
+        if (path.startsWith("\"") && path.endsWith("\"") && path.length() >= 2) {
+            path = unquote(path.substring(1, path.length() - 1));
+        }
+        if ("/dev/null".equals(path)) {
+            return null;
+        }
+        if (path.startsWith("a/") || path.startsWith("b/")) {
+            return path.substring(2);
+        }
+        return path;
+    }
+
+    private static String unquote(String quoted) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(quoted.length());
+        for (int i = 0; i < quoted.length(); i++) {
+            char ch = quoted.charAt(i);
+            if (ch != '\\' || i + 1 >= quoted.length()) {
+                byte[] encoded = String.valueOf(ch).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                continue;
+            }
+            char next = quoted.charAt(++i);
+            if (next >= '0' && next <= '7' && i + 2 < quoted.length()) {
+                bytes.write(Integer.parseInt(quoted.substring(i, i + 3), 8));
+                i += 2;
+            } else if (next == 'n') {
+                bytes.write('\n');
+            } else if (next == 't') {
+                bytes.write('\t');
+            } else {
+                bytes.write(next);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
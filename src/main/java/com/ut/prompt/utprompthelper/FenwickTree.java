@@ -0,0 +1,63 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.Arrays;
+
+/**
+ * 树状数组（Fenwick tree）：单点修改与前缀和都是 O(log n)。
+ * 预览中用它记录每个文件片段的长度，从而直接算出某个文件片段在文档中的起始位置。
+ */
+final class FenwickTree {
+
+    private int[] tree;
+
+    /**
+     * 用 values 初始化，O(n)
+     */
+    FenwickTree(int[] values) {
+        tree = new int[values.length + 1];
+        for (int i = 1; i <= values.length; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * 扩容到至少 size 个元素，新增的元素为 0；容量按倍数增长，逐个追加时均摊 O(log n)
+     */
+    void grow(int size) {
+        int oldSize = tree.length - 1;
+        if (size <= oldSize) {
+            return;
+        }
+        int[] grown = Arrays.copyOf(tree, Math.max(size, oldSize * 2) + 1);
+        int total = prefixSum(oldSize);
+        for (int i = oldSize + 1; i < grown.length; i++) {
+            // 新节点 i 覆盖 (i - lowbit(i), i]，其中只有旧元素非零
+            int from = i - (i & -i);
+            if (from < oldSize) {
+                grown[i] = total - prefixSum(from);
+            }
+        }
+        tree = grown;
+    }
+
+    void add(int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * 下标 [0, index) 的元素之和
+     */
+    int prefixSum(int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,249 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.diff.comparison.ComparisonManager;
+import com.intellij.diff.comparison.ComparisonPolicy;
+import com.intellij.diff.comparison.DiffTooBigException;
+import com.intellij.diff.fragments.LineFragment;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.VirtualFile;
+import git4idea.changes.GitChangeUtils;
+import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 IDE Git 插件（git4idea）在进程内计算差异。
+ * 变更列表来自 GitChangeUtils.getDiffWithWorkingTree，它会为每个基线启动一次 "git diff --name-status" 进程；
+ * 文件内容通过 ContentRevision 读取，工作区内容直接取自 VFS/Document，基线版本的内容由 git4idea 调用 git 读取。
+ * 行级比较使用 IDE 的 ComparisonManager 并忽略空白，与 "git diff -w --unified=0" 的结果保持一致，这部分不启动进程。
+ * 工作区内容可能还没有写入磁盘，没有现成的 blob SHA，因此用新旧两个版本文本的 SHA-1 作为分类缓存的键；
+ * 它与 git 的 blob SHA 计算方式不同，不会和命令行方式得到的键混用。
+ * 只在 Git4Idea 插件启用时才会加载这个类。
+ */
+class Git4IdeaDiffProvider implements DiffProvider {
+
+    private static final Logger LOG = Logger.getInstance(Git4IdeaDiffProvider.class);
+
+    private final GitRepository repository;
+    // 同一次分析中分片并行调用 diff 时共用一份变更列表，避免重复向 git 查询
+    private final Map<String, List<Change>> changesByRef = new ConcurrentHashMap<>();
+
+    private Git4IdeaDiffProvider(GitRepository repository) {
+        this.repository = repository;
+    }
+
+    @Nullable
+    static DiffProvider create(@NotNull Project project, @NotNull VirtualFile root) {
+        GitRepository repository = GitRepositoryManager.getInstance(project).getRepositoryForRoot(root);
+        return repository == null ? null : new Git4IdeaDiffProvider(repository);
+    }
+
+    @Override
+    public void diff(@NotNull String baseRef,
+                     @Nullable Collection<String> paths,
+                     @NotNull PathRules pathRules,
+                     @NotNull DiffListener listener,
+                     @NotNull ProgressIndicator indicator) throws Exception {
+        String rootPath = repository.getRoot().getPath() + "/";
+        Set<String> pathSet = paths == null ? null : new HashSet<>(paths);
+        List<String> hunkLines = new ArrayList<>();
+        for (Change change : getChanges(baseRef)) {
+            indicator.checkCanceled();
+            ContentRevision after = change.getAfterRevision();
+            // 删除的文件没有可以测试的代码
+            if (after == null || !afterPath(change).startsWith(rootPath)) {
+                continue;
+            }
+            String relativePath = afterPath(change).substring(rootPath.length());
+            if ((pathSet != null && !pathSet.contains(relativePath)) || !pathRules.matches(relativePath)) {
+                continue;
+            }
+
+            String afterText = after.getContent();
+            if (afterText == null) {
+                continue;
+            }
+            ContentRevision before = change.getBeforeRevision();
+            String beforeText = before == null ? "" : StringUtil.notNullize(before.getContent());
+
+            listener.onFile(relativePath);
+            listener.onBlobs(relativePath, contentHash(beforeText), contentHash(afterText));
+            if (listener.needsHunks(relativePath)) {
+                try {
+                    emitHunks(relativePath, beforeText, afterText, hunkLines, listener, indicator);
+                } catch (DiffTooBigException e) {
+                    // 文件太大时 IDE 拒绝比较并抛出 ProcessCanceledException 的子类，不能让它取消整个分析；
+                    // 这个文件改用 git 命令行比较磁盘上的内容
+                    LOG.info("File too big for in-process comparison, falling back to git: " + relativePath);
+                    diffWithCli(baseRef, relativePath, listener, indicator);
+                }
+            }
+            listener.onFileEnd(relativePath);
+        }
+    }
+
+    @Override
+    public List<ChangedFile> listChangedFiles(@NotNull String baseRef,
+                                              @NotNull PathRules pathRules,
+                                              @NotNull ProgressIndicator indicator) throws Exception {
+        // 进程内没有现成的增删行数统计，预扫描使用 git 命令行的 numstat，单文件上限和总预算才能按真实行数计算；
+        // numstat 比较的是磁盘内容，有未保存修改的文件改按 Document 的内容重新统计，与 diff 实际比较的内容一致
+        List<ChangedFile> files = new GitCliDiffProvider(new File(repository.getRoot().getPath())).listChangedFiles(baseRef, pathRules, indicator);
+        List<ChangedFile> counted = new ArrayList<>(files.size());
+        for (ChangedFile file : files) {
+            indicator.checkCanceled();
+            ChangedFile unsaved = file.isBinary() ? null : countUnsaved(baseRef, file);
+            counted.add(unsaved == null ? file : unsaved);
+        }
+        return counted;
+    }
+
+    /**
+     * 文件在编辑器中有未保存的修改时按 Document 与基线版本的内容统计增删行数，否则返回 null
+     */
+    @Nullable
+    private ChangedFile countUnsaved(String baseRef, ChangedFile file) throws VcsException {
+        VirtualFile virtualFile = repository.getRoot().findFileByRelativePath(file.getPath());
+        Document document = virtualFile == null ? null : FileDocumentManager.getInstance().getCachedDocument(virtualFile);
+        if (document == null || !FileDocumentManager.getInstance().isDocumentUnsaved(document)) {
+            return null;
+        }
+        String rootPath = repository.getRoot().getPath() + "/";
+        for (Change change : getChanges(baseRef)) {
+            if (afterPath(change).equals(rootPath + file.getPath())) {
+                ContentRevision before = change.getBeforeRevision();
+                String beforeText = before == null ? "" : StringUtil.notNullize(before.getContent());
+                int[] counts = countChangedLines(beforeText, document.getImmutableCharSequence().toString());
+                return new ChangedFile(file.getPath(), file.getOldPath(), counts[0], counts[1], false);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按行的多重集合差统计 (新增行数, 删除行数)。不计算最长公共子序列，行的顺序调整不计入，
+     * 结果不超过 numstat 的统计，只用于估算工作量
+     */
+    static int[] countChangedLines(String beforeText, String afterText) {
+        Map<String, Integer> remaining = new HashMap<>();
+        for (String line : StringUtil.splitByLines(beforeText, false)) {
+            remaining.merge(line, 1, Integer::sum);
+        }
+        int added = 0;
+        for (String line : StringUtil.splitByLines(afterText, false)) {
+            Integer count = remaining.get(line);
+            if (count == null || count == 0) {
+                added++;
+            } else {
+                remaining.put(line, count - 1);
+            }
+        }
+        int removed = 0;
+        for (int count : remaining.values()) {
+            removed += count;
+        }
+        return new int[]{added, removed};
+    }
+
+    /**
+     * 用 git 命令行比较单个文件，把 blob SHA 和 hunk 转交给 listener，文件的开始和结束仍由调用方通知。
+     * 分类缓存改用命令行给出的 blob SHA 作为键，与比较的内容对应
+     */
+    private void diffWithCli(String baseRef, String relativePath, DiffListener listener, ProgressIndicator indicator) throws Exception {
+        DiffListener forwarding = new DiffListener() {
+            @Override
+            public void onFile(String path) {
+            }
+
+            @Override
+            public void onBlobs(String path, String oldBlob, String newBlob) {
+                listener.onBlobs(relativePath, oldBlob, newBlob);
+            }
+
+            @Override
+            public void onHunk(String path, int start, int count, List<String> lines) {
+                listener.onHunk(relativePath, start, count, lines);
+            }
+        };
+        new GitCliDiffProvider(new File(repository.getRoot().getPath()))
+            .diff(baseRef, List.of(relativePath), PathRules.ALL, forwarding, indicator);
+    }
+
+    private List<Change> getChanges(String baseRef) throws VcsException {
+        List<Change> cached = changesByRef.get(baseRef);
+        if (cached != null) {
+            return cached;
+        }
+        Collection<Change> changes = GitChangeUtils.getDiffWithWorkingTree(repository, GitCliDiffProvider.checkRef(baseRef), true);
+        List<Change> sorted = changes == null ? new ArrayList<>() : new ArrayList<>(changes);
+        sorted.sort(Comparator.comparing(change -> afterPath(change)));
+        changesByRef.putIfAbsent(baseRef, sorted);
+        return sorted;
+    }
+
+    private static void emitHunks(String relativePath,
+                                  String beforeText,
+                                  String afterText,
+                                  List<String> hunkLines,
+                                  DiffListener listener,
+                                  ProgressIndicator indicator) throws Exception {
+        String[] beforeLines = StringUtil.splitByLines(beforeText, false);
+        String[] afterLines = StringUtil.splitByLines(afterText, false);
+        List<LineFragment> fragments = ComparisonManager.getInstance()
+            .compareLines(beforeText, afterText, ComparisonPolicy.IGNORE_WHITESPACES, indicator);
+
+        for (LineFragment fragment : fragments) {
+            hunkLines.clear();
+            for (int i = fragment.getStartLine1(); i < fragment.getEndLine1(); i++) {
+                hunkLines.add("-" + lineAt(beforeLines, i));
+            }
+            for (int i = fragment.getStartLine2(); i < fragment.getEndLine2(); i++) {
+                hunkLines.add("+" + lineAt(afterLines, i));
+            }
+
+            // 与 git 的 --unified=0 一致：行号从 1 开始，纯删除时指向被删除位置的前一行
+            int count = fragment.getEndLine2() - fragment.getStartLine2();
+            int start = count == 0 ? fragment.getStartLine2() : fragment.getStartLine2() + 1;
+            listener.onHunk(relativePath, start, count, hunkLines);
+        }
+        hunkLines.clear();
+    }
+
+    private static String contentHash(String text) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    private static String lineAt(String[] lines, int index) {
+        return index < lines.length ? lines[index] : "";
+    }
+
+    private static String afterPath(Change change) {
+        ContentRevision revision = change.getAfterRevision() != null ? change.getAfterRevision() : change.getBeforeRevision();
+        return revision == null ? "" : revision.getFile().getPath();
+    }
+}
@@ -0,0 +1,176 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 通过 git 命令行计算差异，作为 IDE Git 插件不可用时的回退方案
+ */
+public class GitCliDiffProvider implements DiffProvider {
+
+    private static final Logger LOG = Logger.getInstance(GitCliDiffProvider.class);
+
+    private final File workDir;
+
+    // 单条命令中路径参数的总长度上限，留出余量以适应 Windows 32K 的命令行限制
+    private static final int MAX_PATH_ARGS_LENGTH = 24_000;
+
+    public GitCliDiffProvider(File workDir) {
+        this.workDir = workDir;
+    }
+
+    @Override
+    public void diff(@NotNull String baseRef,
+                     @Nullable Collection<String> paths,
+                     @NotNull PathRules pathRules,
+                     @NotNull DiffListener listener,
+                     @NotNull ProgressIndicator indicator) throws Exception {
+        if (paths == null) {
+            // 过滤规则编译成 pathspec，git 只计算和输出需要分析的文件
+            runDiff(baseRef, pathRules.toPathspecs(), pathRules, listener, indicator);
+            return;
+        }
+
+        for (List<String> batch : literalBatches(paths)) {
+            runDiff(baseRef, batch, pathRules, listener, indicator);
+        }
+    }
+
+    @Override
+    public List<ChangedFile> listChangedFiles(@NotNull String baseRef,
+                                              @NotNull PathRules pathRules,
+                                              @NotNull ProgressIndicator indicator) throws Exception {
+        // --numstat 只统计增删行数；-z 保证特殊字符路径和重命名都能被准确解析
+        return numstat(baseRef, pathRules.isEmpty() ? List.of() : pathRules.toPathspecs(), pathRules, indicator);
+    }
+
+    private List<ChangedFile> numstat(String baseRef, List<String> pathspecs, PathRules pathRules,
+                                      ProgressIndicator indicator) throws Exception {
+        List<String> command = new ArrayList<>(List.of("git", "diff", "--numstat", "-z", checkRef(baseRef)));
+        if (!pathspecs.isEmpty()) {
+            command.add("--");
+            command.addAll(pathspecs);
+        }
+
+        ProcessRunner.Result result = log(git(command).capture(indicator)).checkSuccess("Git diff");
+        return parseNumstat(new String(result.getStdout(), StandardCharsets.UTF_8), pathRules);
+    }
+
+    /**
+     * 显式路径按字面匹配，并拆成多组避免单条命令超出命令行长度限制
+     */
+    private static List<List<String>> literalBatches(Collection<String> paths) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        int batchLength = 0;
+        for (String path : paths) {
+            String pathspec = ":(literal)" + path;
+            if (!batch.isEmpty() && batchLength + pathspec.length() > MAX_PATH_ARGS_LENGTH) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchLength = 0;
+            }
+            batch.add(pathspec);
+            batchLength += pathspec.length() + 1;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * 计算 HEAD 与 baseRef 的分叉点提交
+     */
+    public String mergeBase(@NotNull String baseRef, @Nullable ProgressIndicator indicator) throws Exception {
+        ProcessRunner.Result result = log(git(List.of("git", "merge-base", "HEAD", checkRef(baseRef))).capture(indicator))
+            .checkSuccess("Git merge-base");
+        String output = new String(result.getStdout(), StandardCharsets.UTF_8).trim();
+        if (output.isEmpty()) {
+            throw new IllegalStateException("Git merge-base returned no commit for " + baseRef);
+        }
+        return output;
+    }
+
+    /**
+     * 解析 "git diff --numstat -z" 的输出。
+     * 普通记录为 "增加\t删除\t路径\0"；重命名记录的路径部分为空，后面跟着 "旧路径\0新路径\0"；二进制文件的行数为 "-"。
+     */
+    static List<ChangedFile> parseNumstat(String output, PathRules pathRules) {
+        List<ChangedFile> files = new ArrayList<>();
+        String[] tokens = output.split("\0");
+        int i = 0;
+        while (i < tokens.length) {
+            String record = tokens[i++];
+            if (record.isEmpty()) {
+                continue;
+            }
+            String[] parts = record.split("\t", 3);
+            if (parts.length < 3) {
+                continue;
+            }
+            boolean binary = "-".equals(parts[0]);
+            int added = binary ? 0 : Integer.parseInt(parts[0]);
+            int removed = binary ? 0 : Integer.parseInt(parts[1]);
+            String path = parts[2];
+            String oldPath = null;
+            if (path.isEmpty() && i + 1 < tokens.length) {
+                oldPath = tokens[i++];
+                path = tokens[i++];
+            }
+            if (pathRules.matches(path)) {
+                files.add(new ChangedFile(path, oldPath, added, removed, binary));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * baseRef 来自配置文件，以 - 开头时会被 git 当成选项（例如 --output=文件），直接拒绝。
+     * 不使用 --end-of-options，它需要 git 2.24 以上
+     */
+    static String checkRef(String baseRef) {
+        if (baseRef.isEmpty() || baseRef.startsWith("-")) {
+            throw new IllegalArgumentException("Invalid base branch: '" + baseRef + "'");
+        }
+        return baseRef;
+    }
+
+    private void runDiff(String baseRef, List<String> pathspecs, PathRules pathRules,
+                         DiffListener listener, ProgressIndicator indicator) throws Exception {
+        // --full-index 输出完整的 blob SHA，作为语义过滤结果的缓存键
+        List<String> command = new ArrayList<>(List.of("git", "diff", "--unified=0", "-w", "--full-index", checkRef(baseRef)));
+        if (!pathspecs.isEmpty()) {
+            command.add("--");
+            command.addAll(pathspecs);
+        }
+
+        // 参数以数组形式传递，路径中的空格不会被拆开；环境变量继承自 IDE 进程
+        log(git(command).run(indicator, stdout -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stdout, StandardCharsets.UTF_8));
+            new DiffStreamParser(pathRules::matches).parse(reader, listener);
+        })).checkSuccess("Git diff");
+    }
+
+    private ProcessRunner git(List<String> command) {
+        long timeoutSeconds = Math.max(0, SimplePromptConfig.getInstance().getGitTimeoutSeconds());
+        return new ProcessRunner(workDir, command).withTimeout(timeoutSeconds * 1000);
+    }
+
+    private static ProcessRunner.Result log(ProcessRunner.Result result) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(result.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package com.ut.prompt.utprompthelper;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 直接读取 .git 目录解析引用对应的提交 SHA，不需要启动 git 进程。
+ * 支持 loose ref、packed-refs 以及 worktree/submodule 使用的 "gitdir:" 文件；无法解析时返回 null。
+ */
+final class GitRefs {
+
+    private GitRefs() {
+    }
+
+    /**
+     * 工作区的状态键：HEAD 与基线分支的提交 SHA，任一无法解析时返回 null
+     */
+    @Nullable
+    static String stateKey(File workTree, String baseRef) {
+        String head = resolve(workTree, "HEAD");
+        String base = resolve(workTree, baseRef);
+        return head == null || base == null ? null : head + ":" + base;
+    }
+
+    @Nullable
+    static String resolve(File workTree, String ref) {
+        File gitDir = gitDir(workTree);
+        if (gitDir == null) {
+            return null;
+        }
+        if (isSha(ref)) {
+            return ref;
+        }
+        try {
+            return resolveRef(gitDir, commonDir(gitDir), ref, 0);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String resolveRef(File gitDir, File commonDir, String ref, int depth) throws IOException {
+        if (depth > 5) {
+            return null;
+        }
+        // 与 git rev-parse 的查找顺序一致
+        String[] candidates = "HEAD".equals(ref)
+            ? new String[]{ref}
+            : new String[]{ref, "refs/" + ref, "refs/tags/" + ref, "refs/heads/" + ref, "refs/remotes/" + ref};
+        for (String candidate : candidates) {
+            // HEAD 等每个 worktree 私有的引用在 gitDir，其余共享引用在 commonDir
+            File loose = candidate.startsWith("refs/") ? new File(commonDir, candidate) : new File(gitDir, candidate);
+            if (loose.isFile()) {
+                String content = readFirstLine(loose);
+                if (content.startsWith("ref: ")) {
+                    return resolveRef(gitDir, commonDir, content.substring(5).trim(), depth + 1);
+                }
+                return isSha(content) ? content : null;
+            }
+            String packed = findPacked(commonDir, candidate);
+            if (packed != null) {
+                return packed;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String findPacked(File commonDir, String refName) throws IOException {
+        File packedRefs = new File(commonDir, "packed-refs");
+        if (!packedRefs.isFile()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(packedRefs.toPath(), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.length() > 41 && line.charAt(40) == ' ' && line.substring(41).equals(refName)) {
+                return line.substring(0, 40);
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    static File gitDir(File workTree) {
+        File dotGit = new File(workTree, ".git");
+        if (dotGit.isDirectory()) {
+            return dotGit;
+        }
+        if (dotGit.isFile()) {
+            try {
+                String content = readFirstLine(dotGit);
+                if (content.startsWith("gitdir: ")) {
+                    File target = new File(content.substring(8).trim());
+                    return target.isAbsolute() ? target : new File(workTree, target.getPath());
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static File commonDir(File gitDir) throws IOException {
+        File commonDirFile = new File(gitDir, "commondir");
+        if (!commonDirFile.isFile()) {
+            return gitDir;
+        }
+        File target = new File(readFirstLine(commonDirFile));
+        return target.isAbsolute() ? target : new File(gitDir, target.getPath());
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        int newline = content.indexOf('\n');
+        return (newline < 0 ? content : content.substring(0, newline)).trim();
+    }
+
+    private static boolean isSha(String value) {
+        if (value.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (!(ch >= '0' && ch <= '9') && !(ch >= 'a' && ch <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsRoot;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 项目中的 Git 根目录：IDE 中登记的所有 Git 版本控制根目录（包括子模块和同一项目中的多个仓库），
+ * 没有登记时回退到项目目录。
+ */
+final class GitRoots {
+
+    private GitRoots() {
+    }
+
+    /**
+     * 按路径排序的 Git 根目录，项目没有目录时返回空列表
+     */
+    static List<VirtualFile> find(Project project) {
+        List<VirtualFile> roots = new ArrayList<>();
+        for (VcsRoot vcsRoot : ProjectLevelVcsManager.getInstance(project).getAllVcsRoots()) {
+            VirtualFile path = vcsRoot.getPath();
+            if (path != null && vcsRoot.getVcs() != null && "Git".equals(vcsRoot.getVcs().getName()) && isGitRoot(path)) {
+                roots.add(path);
+            }
+        }
+        if (roots.isEmpty()) {
+            // 没有登记版本控制时保持原来的行为，在项目目录中执行 git
+            VirtualFile baseDir = project.getBaseDir();
+            if (baseDir != null) {
+                roots.add(baseDir);
+            }
+        }
+        roots.sort(Comparator.comparing(VirtualFile::getPath));
+        return roots;
+    }
+
+    /**
+     * 包含 file 的最内层 Git 根目录，file 不在任何根目录下时返回 null
+     */
+    @Nullable
+    static VirtualFile rootOf(Project project, VirtualFile file) {
+        VirtualFile result = null;
+        for (VirtualFile root : find(project)) {
+            if (file.getPath().startsWith(root.getPath() + "/")
+                && (result == null || root.getPath().length() > result.getPath().length())) {
+                result = root;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 根目录下文件路径在界面和提示词中使用的前缀：项目目录本身为空串，项目目录下的根目录为相对路径，
+     * 其它位置的根目录为绝对路径
+     */
+    static String prefix(Project project, VirtualFile root) {
+        String basePath = project.getBasePath();
+        if (basePath == null || !root.getPath().startsWith(basePath)) {
+            return root.getPath() + "/";
+        }
+        if (root.getPath().length() == basePath.length()) {
+            return "";
+        }
+        return root.getPath().startsWith(basePath + "/")
+            ? root.getPath().substring(basePath.length() + 1) + "/"
+            : root.getPath() + "/";
+    }
+
+    private static boolean isGitRoot(VirtualFile dir) {
+        return GitRefs.gitDir(new File(dir.getPath())) != null;
+    }
+}
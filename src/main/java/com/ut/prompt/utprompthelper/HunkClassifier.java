@@ -0,0 +1,211 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 判断一个 hunk 是否包含需要编写单元测试的代码变更。
+ * 导入语句、包声明、注释（包括块注释内部的行）、空白行以及"把代码整体注释掉"的变更都不算重要变更。
+ */
+public final class HunkClassifier {
+
+    private HunkClassifier() {
+    }
+
+    public static boolean isSignificant(List<String> hunkLines) {
+        // 删除侧和新增侧分别是文件的两个版本，块注释状态各自跟踪
+        JavaLineLexer removedSide = new JavaLineLexer();
+        JavaLineLexer addedSide = new JavaLineLexer();
+        boolean hasCode = false;
+        for (String line : hunkLines) {
+            boolean added = line.charAt(0) == '+';
+            if ((added ? addedSide : removedSide).isCode(line)) {
+                if (added) {
+                    // 新增了代码，不可能是"整体注释掉"的变更
+                    return true;
+                }
+                hasCode = true;
+            }
+        }
+
+        // 只删除了代码、新增的都是注释时，再看删除的代码是否都以注释形式加了回来
+        return hasCode && !isCommentedOutChange(hunkLines);
+    }
+
+    /**
+     * 判断 hunk 是否只是把删除的代码以注释形式加了回来。
+     * 新增行必须都是注释、导入语句或空白行；删除行与注释行去掉注释符号和所有空白后按多重集合匹配，每行只参与一次匹配。
+     * 行内容先用 64 位哈希匹配，不为单行分配对象；全部命中时（只有确实注释掉代码的 hunk 才会走到这里）
+     * 再用去掉空白的字符串确认一次，排除哈希碰撞。
+     */
+    static boolean isCommentedOutChange(List<String> hunkLines) {
+        int removedCount = 0;
+        int addedCount = 0;
+        for (String line : hunkLines) {
+            if (line.startsWith("-")) {
+                if (trimStart(line, 1, line.length()) < line.length()) {
+                    removedCount++;
+                }
+            } else if (line.startsWith("+")) {
+                if (!isImportOrComment(line)) {
+                    return false;
+                }
+                addedCount++;
+            }
+        }
+
+        if (removedCount == 0 || addedCount == 0) {
+            return false;
+        }
+
+        LongMultiset availableComments = new LongMultiset(addedCount);
+        for (String line : hunkLines) {
+            if (line.startsWith("+")) {
+                availableComments.add(commentContentHash(line));
+            }
+        }
+
+        for (String line : hunkLines) {
+            if (!line.startsWith("-")) {
+                continue;
+            }
+            int end = trimEnd(line, 1, line.length());
+            int begin = trimStart(line, 1, end);
+            if (!hasNonWhitespace(line, begin, end)) {
+                continue;
+            }
+            if (!availableComments.remove(hash(line, begin, end))) {
+                return false;
+            }
+        }
+
+        return matchesExactly(hunkLines, addedCount);
+    }
+
+    /**
+     * 与哈希匹配相同的规则，但按去掉空白后的字符串比较
+     */
+    private static boolean matchesExactly(List<String> hunkLines, int addedCount) {
+        Map<String, Integer> availableComments = new HashMap<>(addedCount * 2);
+        for (String line : hunkLines) {
+            if (line.startsWith("+")) {
+                long span = commentContentSpan(line);
+                availableComments.merge(stripWhitespace(line, (int) (span >>> 32), (int) span), 1, Integer::sum);
+            }
+        }
+        for (String line : hunkLines) {
+            if (!line.startsWith("-")) {
+                continue;
+            }
+            String content = stripWhitespace(line, 1, line.length());
+            if (content.isEmpty()) {
+                continue;
+            }
+            Integer count = availableComments.get(content);
+            if (count == null || count == 0) {
+                return false;
+            }
+            availableComments.put(content, count - 1);
+        }
+        return true;
+    }
+
+    /**
+     * 新增行去掉行首 + 和空白后是否为空，或以导入、包声明、注释符号开头
+     */
+    private static boolean isImportOrComment(String line) {
+        int begin = trimStart(line, 1, line.length());
+        return begin == trimEnd(line, begin, line.length())
+            || line.startsWith("import ", begin) || line.startsWith("package ", begin)
+            || line.startsWith("//", begin) || line.startsWith("/*", begin) || line.startsWith("*", begin);
+    }
+
+    /**
+     * 去掉行首 +、注释符号（//、/*、*、结尾的注释结束符）和首尾空白后的内容哈希
+     */
+    private static long commentContentHash(String line) {
+        long span = commentContentSpan(line);
+        return hash(line, (int) (span >>> 32), (int) span);
+    }
+
+    /**
+     * 注释内容的区间，起点放在高 32 位、终点放在低 32 位，避免为每行分配数组
+     */
+    private static long commentContentSpan(String line) {
+        int end = trimEnd(line, 1, line.length());
+        int begin = trimStart(line, 1, end);
+
+        if (line.startsWith("//", begin)) {
+            begin = trimStart(line, begin + 2, end);
+            end = trimEnd(line, begin, end);
+        }
+
+        if (line.startsWith("/*", begin)) {
+            begin = trimStart(line, begin + 2, end);
+            end = trimEnd(line, begin, end);
+        }
+
+        if (begin < end && line.charAt(begin) == '*') {
+            begin = trimStart(line, begin + 1, end);
+            end = trimEnd(line, begin, end);
+        }
+
+        if (end - begin >= 2 && line.startsWith("*/", end - 2)) {
+            end = trimEnd(line, begin, end - 2);
+            begin = trimStart(line, begin, end);
+        }
+
+        return ((long) begin << 32) | end;
+    }
+
+    /**
+     * [begin, end) 中非空白字符的 FNV-1a 哈希，等价于先删除所有空白再比较
+     */
+    private static long hash(String s, int begin, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = begin; i < end; i++) {
+            char ch = s.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                h ^= ch;
+                h *= 0x100000001b3L;
+            }
+        }
+        return h;
+    }
+
+    private static String stripWhitespace(String s, int begin, int end) {
+        StringBuilder sb = new StringBuilder(end - begin);
+        for (int i = begin; i < end; i++) {
+            char ch = s.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasNonWhitespace(String s, int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 与 String.trim() 相同的边界规则：码值不大于空格的字符都算空白
+    private static int trimStart(String s, int begin, int end) {
+        while (begin < end && s.charAt(begin) <= ' ') {
+            begin++;
+        }
+        return begin;
+    }
+
+    private static int trimEnd(String s, int begin, int end) {
+        while (end > begin && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,135 @@
+package com.ut.prompt.utprompthelper;
+
+/**
+ * 逐行扫描 diff 中一侧（删除侧或新增侧）的 Java 代码，判断每一行是否包含代码。
+ * 块注释和文本块（"""）的状态会跨行保留，直接在原字符串上按下标扫描，不为单行分配对象。
+ * <p>
+ * hunk 不一定从块注释开头开始，因此这一侧开头连续以 * 开头的行按块注释内部处理；
+ * 在遇到注释结束符之前出现不以 * 开头的非空行时，说明这些行并不在注释里（例如续行的乘法），
+ * 从这一行起恢复正常扫描。
+ */
+final class JavaLineLexer {
+
+    private boolean started;
+    private boolean inBlockComment;
+    private boolean inTextBlock;
+    // 当前的块注释状态是由开头的 * 推测出来的，还没有遇到 */ 确认
+    private boolean guessedComment;
+
+    /**
+     * 判断 diff 行（第 0 个字符是 + 或 -）是否包含代码；
+     * 空白、注释、导入语句和包声明都不算代码
+     */
+    boolean isCode(String line) {
+        int length = line.length();
+        int i = 1;
+
+        if (!started) {
+            int first = skipWhitespace(line, i, length);
+            if (first == length) {
+                return false;
+            }
+            started = true;
+            if (!inBlockComment && !inTextBlock && line.charAt(first) == '*') {
+                inBlockComment = true;
+                guessedComment = true;
+            }
+        } else if (guessedComment) {
+            int first = skipWhitespace(line, i, length);
+            if (first == length) {
+                return false;
+            }
+            if (line.charAt(first) != '*') {
+                inBlockComment = false;
+                guessedComment = false;
+            }
+        }
+
+        boolean code = false;
+        boolean importLine = false;
+        while (i < length) {
+            char ch = line.charAt(i);
+
+            if (inBlockComment) {
+                if (ch == '*' && i + 1 < length && line.charAt(i + 1) == '/') {
+                    inBlockComment = false;
+                    guessedComment = false;
+                    i += 2;
+                } else {
+                    i++;
+                }
+                continue;
+            }
+
+            if (inTextBlock) {
+                if (ch == '\\') {
+                    code = true;
+                    i += 2;
+                } else if (ch == '"' && line.startsWith("\"\"\"", i)) {
+                    code = true;
+                    inTextBlock = false;
+                    i += 3;
+                } else {
+                    code |= !Character.isWhitespace(ch);
+                    i++;
+                }
+                continue;
+            }
+
+            if (Character.isWhitespace(ch) || ch <= ' ') {
+                i++;
+                continue;
+            }
+
+            if (ch == '/' && i + 1 < length) {
+                char next = line.charAt(i + 1);
+                if (next == '/') {
+                    break;
+                }
+                if (next == '*') {
+                    inBlockComment = true;
+                    i += 2;
+                    continue;
+                }
+            }
+
+            if (!code) {
+                code = true;
+                importLine = line.startsWith("import ", i) || line.startsWith("package ", i);
+            }
+
+            if (ch == '"' && line.startsWith("\"\"\"", i)) {
+                inTextBlock = true;
+                i += 3;
+            } else if (ch == '"' || ch == '\'') {
+                i = skipLiteral(line, i + 1, length, ch);
+            } else {
+                i++;
+            }
+        }
+
+        return code && !importLine;
+    }
+
+    // 跳过单行字符串或字符字面量，返回结束引号之后的位置
+    private static int skipLiteral(String line, int i, int length, char quote) {
+        while (i < length) {
+            char ch = line.charAt(i);
+            if (ch == '\\') {
+                i += 2;
+            } else if (ch == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static int skipWhitespace(String line, int i, int length) {
+        while (i < length && (line.charAt(i) <= ' ' || Character.isWhitespace(line.charAt(i)))) {
+            i++;
+        }
+        return i;
+    }
+}
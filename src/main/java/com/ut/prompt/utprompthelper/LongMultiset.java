@@ -0,0 +1,81 @@
+package com.ut.prompt.utprompthelper;
+
+/**
+ * 以 long 为元素的多重集合（开放寻址哈希表），只保存元素和出现次数，不做装箱。
+ * 用于按行哈希做"删除的代码是否都以注释形式加回来"的匹配。
+ */
+final class LongMultiset {
+
+    private long[] keys;
+    private int[] counts;
+    private boolean[] used;
+    private int size;
+
+    LongMultiset(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        counts = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    void add(long key) {
+        int slot = slotOf(key);
+        if (used[slot]) {
+            counts[slot]++;
+            return;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        counts[slot] = 1;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * 取走一个元素，集合中没有剩余时返回 false
+     */
+    boolean remove(long key) {
+        int slot = slotOf(key);
+        if (!used[slot] || counts[slot] == 0) {
+            return false;
+        }
+        // 计数减到 0 时保留槽位，避免开放寻址的探测链断开
+        counts[slot]--;
+        return true;
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slotOf(oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,183 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiParameter;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 一个 Java 文件中方法所占行号区间的索引，用于把变更范围映射到所在的方法。
+ * 只收录具名类（包括内部类）直接声明的方法，这些区间互不重叠，按起始行排序后可以二分查找；
+ * 匿名类和局部类中的方法归入外层方法。
+ * <p>
+ * 所有 Java PSI 的引用都集中在这个类里，只在 Java 插件可用时才会被加载。
+ */
+final class MethodIndex {
+
+    // 建立索引时内容的修改时间戳，以及内容取自磁盘还是 Document
+    private final long modificationStamp;
+    private final boolean fromDisk;
+    // 方法区间（1 起始的行号，包含 Javadoc 和注解），按起始行排序
+    private final int[] methodStarts;
+    private final int[] methodEnds;
+    private final String[] methodLabels;
+    // 类区间，外层类在前，最后一个包含某行的就是最内层的类
+    private final int[] classStarts;
+    private final int[] classEnds;
+    private final String[] classNames;
+
+    private MethodIndex(long modificationStamp, boolean fromDisk, List<Interval> methods, List<Interval> classes) {
+        this.modificationStamp = modificationStamp;
+        this.fromDisk = fromDisk;
+        // 内部类的方法在外层类的方法之后收集，按起始行重新排序
+        methods.sort(Comparator.comparingInt(interval -> interval.start));
+        this.methodStarts = new int[methods.size()];
+        this.methodEnds = new int[methods.size()];
+        this.methodLabels = new String[methods.size()];
+        for (int i = 0; i < methods.size(); i++) {
+            methodStarts[i] = methods.get(i).start;
+            methodEnds[i] = methods.get(i).end;
+            methodLabels[i] = methods.get(i).label;
+        }
+        this.classStarts = new int[classes.size()];
+        this.classEnds = new int[classes.size()];
+        this.classNames = new String[classes.size()];
+        for (int i = 0; i < classes.size(); i++) {
+            classStarts[i] = classes.get(i).start;
+            classEnds[i] = classes.get(i).end;
+            classNames[i] = classes.get(i).label;
+        }
+    }
+
+    /**
+     * 在读操作中调用，document 的内容必须与 psiFile 一致；不是 Java 文件时返回 null
+     */
+    @Nullable
+    static MethodIndex build(PsiFile psiFile, Document document, long modificationStamp, boolean fromDisk) {
+        if (!(psiFile instanceof PsiJavaFile)) {
+            return null;
+        }
+        Builder builder = new Builder(document);
+        for (PsiClass psiClass : ((PsiJavaFile) psiFile).getClasses()) {
+            builder.visit(psiClass, null);
+        }
+        return new MethodIndex(modificationStamp, fromDisk, builder.methods, builder.classes);
+    }
+
+    boolean isUpToDate(long modificationStamp, boolean fromDisk) {
+        return this.modificationStamp == modificationStamp && this.fromDisk == fromDisk;
+    }
+
+    /**
+     * 把每个变更范围所在的方法追加到 labels；不在任何方法内的范围（字段、类声明等）记为所在的类
+     */
+    void collectLabels(ChangeRanges ranges, Collection<String> labels) {
+        for (int i = 0; i < ranges.size(); i++) {
+            int start = ranges.getStart(i);
+            // 纯删除的范围没有行，按删除位置所在的那一行处理
+            int end = Math.max(start, ranges.getEnd(i));
+
+            boolean inMethod = false;
+            for (int m = firstMethodEndingAtOrAfter(start); m < methodStarts.length && methodStarts[m] <= end; m++) {
+                labels.add(methodLabels[m]);
+                inMethod = true;
+            }
+
+            if (!inMethod) {
+                String className = innermostClassAt(start);
+                if (className != null) {
+                    labels.add(className + " 的字段或类声明");
+                }
+            }
+        }
+    }
+
+    private int firstMethodEndingAtOrAfter(int line) {
+        int low = 0;
+        int high = methodEnds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (methodEnds[mid] < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Nullable
+    private String innermostClassAt(int line) {
+        String name = null;
+        for (int i = 0; i < classStarts.length; i++) {
+            if (classStarts[i] <= line && line <= classEnds[i]) {
+                name = classNames[i];
+            }
+        }
+        return name;
+    }
+
+    private static final class Interval {
+        final int start;
+        final int end;
+        final String label;
+
+        Interval(int[] lines, String label) {
+            this.start = lines[0];
+            this.end = lines[1];
+            this.label = label;
+        }
+    }
+
+    private static final class Builder {
+        private final Document document;
+        private final List<Interval> methods = new ArrayList<>();
+        private final List<Interval> classes = new ArrayList<>();
+
+        Builder(Document document) {
+            this.document = document;
+        }
+
+        void visit(PsiClass psiClass, @Nullable String outerName) {
+            ProgressManager.checkCanceled();
+            String name = outerName == null ? psiClass.getName() : outerName + "." + psiClass.getName();
+            classes.add(new Interval(lines(psiClass.getTextRange()), name));
+
+            for (PsiMethod method : psiClass.getMethods()) {
+                methods.add(new Interval(lines(method.getTextRange()), name + "#" + signature(method)));
+            }
+            for (PsiClass inner : psiClass.getInnerClasses()) {
+                visit(inner, name);
+            }
+        }
+
+        private int[] lines(TextRange range) {
+            int length = document.getTextLength();
+            int startLine = document.getLineNumber(Math.min(range.getStartOffset(), length)) + 1;
+            int endLine = document.getLineNumber(Math.min(Math.max(range.getEndOffset() - 1, range.getStartOffset()), length)) + 1;
+            return new int[]{startLine, endLine};
+        }
+
+        private static String signature(PsiMethod method) {
+            StringBuilder sb = new StringBuilder(method.getName()).append('(');
+            PsiParameter[] parameters = method.getParameterList().getParameters();
+            for (int i = 0; i < parameters.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(parameters[i].getType().getPresentableText());
+            }
+            return sb.append(')').toString();
+        }
+    }
+}
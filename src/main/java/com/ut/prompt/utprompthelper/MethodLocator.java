@@ -0,0 +1,142 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiManager;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把变更范围映射到所在的类和方法。
+ * 行号必须与 diff 使用的内容一致：git4idea 比较的是 Document，在提交到 PSI 之后直接使用；
+ * 命令行 git 比较的是磁盘文件，Document 有未保存的修改时改为解析磁盘内容。
+ * 每个文件的方法区间索引按修改时间戳缓存，文件未修改时再次分析不需要重新遍历 PSI，缓存只保留最近用过的文件；
+ * 多个文件在并行的非阻塞读操作中处理，不会挡住写操作。需要 Java 插件，不可用时结果保持不变。
+ */
+@Service(Service.Level.PROJECT)
+public final class MethodLocator {
+
+    private static final int MAX_INDICES = 256;
+
+    private final Project project;
+    // 文件路径 -> 方法区间索引，按访问顺序排列，超出上限时丢弃最久未用的
+    private final Map<String, MethodIndex> indices = new LinkedHashMap<String, MethodIndex>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MethodIndex> eldest) {
+            return size() > MAX_INDICES;
+        }
+    };
+
+    public MethodLocator(Project project) {
+        this.project = project;
+    }
+
+    public static MethodLocator getInstance(Project project) {
+        return project.getService(MethodLocator.class);
+    }
+
+    public ChangeSet locate(VirtualFile root, ChangeSet changes, ProgressIndicator indicator) {
+        if (changes.isEmpty() || !SimplePromptConfig.getInstance().isDescribeByMethod() || !isJavaPluginEnabled()) {
+            return changes;
+        }
+
+        indicator.setText2("正在定位变更所在的方法...");
+        boolean useDocuments = DiffProvider.comparesDocuments(project, root);
+        List<String> paths = new ArrayList<>(changes.getPaths());
+        Map<String, List<String>> methods = new ConcurrentHashMap<>();
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(paths, indicator, path -> {
+            List<String> labels = ReadAction.nonBlocking(() -> labelsFor(root, path, changes.get(path), useDocuments))
+                .withDocumentsCommitted(project)
+                .wrapProgress(indicator)
+                .executeSynchronously();
+            if (labels != null && !labels.isEmpty()) {
+                methods.put(path, labels);
+            }
+            return true;
+        });
+
+        // 按变更集合的文件顺序排列
+        Map<String, List<String>> ordered = new LinkedHashMap<>();
+        for (String path : paths) {
+            List<String> labels = methods.get(path);
+            if (labels != null) {
+                ordered.put(path, labels);
+            }
+        }
+        return changes.withMethods(ordered);
+    }
+
+    /**
+     * 在读操作中调用，此时 Document 已经提交到 PSI
+     */
+    @Nullable
+    private List<String> labelsFor(VirtualFile root, String path, ChangeRanges ranges, boolean useDocuments) {
+        VirtualFile file = root.findFileByRelativePath(path);
+        if (file == null || !file.isValid() || project.isDisposed()) {
+            return null;
+        }
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        if (document == null) {
+            return null;
+        }
+        // 命令行 git 看不到未保存的修改，按磁盘内容定位
+        boolean fromDisk = !useDocuments && FileDocumentManager.getInstance().isDocumentUnsaved(document);
+        long stamp = fromDisk ? file.getModificationStamp() : document.getModificationStamp();
+
+        MethodIndex index;
+        synchronized (indices) {
+            index = indices.get(file.getPath());
+        }
+        if (index == null || !index.isUpToDate(stamp, fromDisk)) {
+            index = fromDisk ? buildFromDisk(file, stamp) : buildFromDocument(file, document);
+            if (index == null) {
+                return null;
+            }
+            synchronized (indices) {
+                indices.put(file.getPath(), index);
+            }
+        }
+
+        Set<String> labels = new LinkedHashSet<>();
+        index.collectLabels(ranges, labels);
+        return new ArrayList<>(labels);
+    }
+
+    @Nullable
+    private MethodIndex buildFromDocument(VirtualFile file, Document document) {
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        return psiFile == null ? null : MethodIndex.build(psiFile, document, document.getModificationStamp(), false);
+    }
+
+    @Nullable
+    private MethodIndex buildFromDisk(VirtualFile file, long stamp) {
+        CharSequence text = LoadTextUtil.loadText(file);
+        PsiFile psiFile = PsiFileFactory.getInstance(project).createFileFromText(file.getName(), file.getFileType(), text);
+        return psiFile == null ? null : MethodIndex.build(psiFile, EditorFactory.getInstance().createDocument(text), stamp, true);
+    }
+
+    static boolean isJavaPluginEnabled() {
+        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginId.getId("com.intellij.java"));
+        return plugin != null && plugin.isEnabled();
+    }
+}
@@ -0,0 +1,109 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 全局分析：对项目中的每个 Git 根目录分别分析，在有界线程池上并行执行，
+ * 再把各自的结果加上根目录前缀（见 {@link GitRoots#prefix}）合并为一个变更集合。
+ * 有多个根目录时，分析失败的根目录（例如其中没有基线分支）被跳过并记录日志，全部失败时才报错。
+ */
+final class MultiRootAnalyzer {
+
+    // 同时分析的根目录数上限，每个根目录内部还可能再并行分片
+    private static final int MAX_PARALLEL_ROOTS = 4;
+    private static final Logger LOG = Logger.getInstance(MultiRootAnalyzer.class);
+
+    private MultiRootAnalyzer() {
+    }
+
+    /**
+     * 一次全局分析的键，用于合并重复的请求
+     */
+    static String key(List<VirtualFile> roots, PathRules pathRules) {
+        StringBuilder sb = new StringBuilder();
+        for (VirtualFile root : roots) {
+            sb.append(DiffScope.global(root, pathRules).key()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * listener 收到的路径已经带上根目录前缀
+     */
+    static ChangeSet analyze(Project project,
+                             List<VirtualFile> roots,
+                             PathRules pathRules,
+                             AnalysisListener listener,
+                             ProgressIndicator indicator) throws Exception {
+        if (roots.size() == 1) {
+            return analyzeRoot(project, roots.get(0), pathRules, listener, indicator);
+        }
+
+        int parallelism = Math.min(roots.size(), Math.min(MAX_PARALLEL_ROOTS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("UTPrompt Roots", parallelism);
+        List<Future<ChangeSet>> futures = new ArrayList<>();
+        try {
+            for (VirtualFile root : roots) {
+                futures.add(executor.submit(() -> {
+                    ChangeSet[] result = new ChangeSet[1];
+                    ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+                        try {
+                            result[0] = analyzeRoot(project, root, pathRules, listener, indicator);
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+                    }, indicator);
+                    return result[0];
+                }));
+            }
+
+            List<ChangeSet> parts = new ArrayList<>();
+            Exception firstError = null;
+            for (int i = 0; i < roots.size(); i++) {
+                try {
+                    parts.add(ShardedDiffRunner.await(futures.get(i), indicator));
+                } catch (ProcessCanceledException e) {
+                    throw e;
+                } catch (Exception e) {
+                    LOG.warn("Skipped git root " + roots.get(i).getPath() + ": " + e.getMessage());
+                    if (firstError == null) {
+                        firstError = e;
+                    }
+                }
+            }
+            if (parts.isEmpty() && firstError != null) {
+                throw firstError;
+            }
+            return ChangeSet.merge(parts);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private static ChangeSet analyzeRoot(Project project,
+                                         VirtualFile root,
+                                         PathRules pathRules,
+                                         AnalysisListener listener,
+                                         ProgressIndicator indicator) throws Exception {
+        String prefix = GitRoots.prefix(project, root);
+        ChangeSet changes = ChangeAnalyzer.analyze(project, DiffScope.global(root, pathRules), listener.withPathPrefix(prefix), indicator);
+        changes = MethodLocator.getInstance(project).locate(root, changes, indicator);
+        return changes.withPathPrefix(prefix);
+    }
+}
@@ -0,0 +1,140 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 文件包含/排除规则，使用 git 的 glob 语法（连续两个星号匹配任意层目录，单个星号不跨越目录）。
+ * 同一组规则既可以编译成 git pathspec，让 git 只计算需要的文件，也可以在进程内匹配路径。
+ */
+public final class PathRules {
+
+    public static final String DEFAULT_INCLUDES = "**/*.java";
+    public static final String DEFAULT_EXCLUDES = "**/src/test/**";
+
+    public static final PathRules ALL = new PathRules(Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<Pattern> includePatterns = new ArrayList<>();
+    private final List<Pattern> excludePatterns = new ArrayList<>();
+
+    private PathRules(List<String> includes, List<String> excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+        for (String glob : includes) {
+            includePatterns.add(Pattern.compile(toRegex(glob)));
+        }
+        for (String glob : excludes) {
+            excludePatterns.add(Pattern.compile(toRegex(glob)));
+        }
+    }
+
+    /**
+     * 逗号分隔的规则列表，格式见 DEFAULT_INCLUDES 与 DEFAULT_EXCLUDES
+     */
+    public static PathRules of(String includes, String excludes) {
+        return new PathRules(split(includes), split(excludes));
+    }
+
+    public static PathRules fromConfig(SimplePromptConfig config) {
+        return of(config.getIncludePatterns(), config.getExcludePatterns());
+    }
+
+    public boolean matches(String path) {
+        if (!includePatterns.isEmpty() && includePatterns.stream().noneMatch(p -> p.matcher(path).matches())) {
+            return false;
+        }
+        return excludePatterns.stream().noneMatch(p -> p.matcher(path).matches());
+    }
+
+    /**
+     * 编译成 "git diff -- &lt;pathspec&gt;..." 使用的参数，不含 "--"
+     */
+    public List<String> toPathspecs() {
+        List<String> pathspecs = new ArrayList<>();
+        for (String glob : includes) {
+            pathspecs.add(":(glob)" + glob);
+        }
+        for (String glob : excludes) {
+            pathspecs.add(":(glob,exclude)" + glob);
+        }
+        return pathspecs;
+    }
+
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", includes) + "!" + String.join(",", excludes);
+    }
+
+    private static List<String> split(String value) {
+        List<String> result = new ArrayList<>();
+        if (value == null) {
+            return result;
+        }
+        for (String part : value.split(",")) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按 git glob pathspec 的语义把规则转换成正则表达式
+     */
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char ch = glob.charAt(i);
+            if (ch == '*' && glob.startsWith("**", i)) {
+                boolean atStart = i == 0 || glob.charAt(i - 1) == '/';
+                if (atStart && glob.startsWith("**/", i)) {
+                    // 开头或紧跟在 "/" 之后的双星号目录：零层或多层目录
+                    regex.append("(?:.*/)?");
+                    i += 3;
+                    continue;
+                }
+                if (atStart && i + 2 == glob.length()) {
+                    // 结尾的双星号：目录下的所有内容
+                    regex.append(".*");
+                    i += 2;
+                    continue;
+                }
+                regex.append("[^/]*");
+                i += 2;
+            } else if (ch == '*') {
+                regex.append("[^/]*");
+                i++;
+            } else if (ch == '?') {
+                regex.append("[^/]");
+                i++;
+            } else if (ch == '[') {
+                int close = glob.indexOf(']', i + 1);
+                if (close < 0) {
+                    regex.append("\\[");
+                    i++;
+                } else {
+                    String body = glob.substring(i + 1, close);
+                    if (body.startsWith("!")) {
+                        body = "^" + body.substring(1);
+                    }
+                    regex.append('[').append(body.replace("\\", "\\\\")).append(']');
+                    i = close + 1;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(ch)));
+                i++;
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 项目打开后安排一次变更分析预热，索引期间的等待由 {@link AnalysisPrewarmer} 处理
+ */
+public class PrewarmStartupActivity implements StartupActivity.DumbAware {
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        AnalysisPrewarmer.getInstance(project).schedule();
+    }
+}
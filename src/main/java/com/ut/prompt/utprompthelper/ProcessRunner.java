@@ -0,0 +1,213 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 执行外部命令（git 等）。
+ * 命令以参数数组传递，不经过 shell 拆分；标准输出交给调用方流式读取，标准错误在后台线程中读入有界缓冲区，
+ * 两个管道都不会因为写满而让子进程阻塞。任务取消或超时时结束整个进程树。
+ */
+public final class ProcessRunner {
+
+    /**
+     * 读取子进程的标准输出，在读取线程上执行
+     */
+    public interface OutputConsumer {
+        void consume(InputStream stdout) throws IOException;
+    }
+
+    /**
+     * 命令的执行结果：退出码、标准错误（超出上限的部分被截断）和耗时
+     */
+    public static final class Result {
+        private final List<String> command;
+        private final int exitCode;
+        private final String stderr;
+        private final byte[] stdout;
+        private final long wallTimeMillis;
+
+        Result(List<String> command, int exitCode, String stderr, byte[] stdout, long wallTimeMillis) {
+            this.command = command;
+            this.exitCode = exitCode;
+            this.stderr = stderr;
+            this.stdout = stdout;
+            this.wallTimeMillis = wallTimeMillis;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public String getStderr() {
+            return stderr;
+        }
+
+        /**
+         * 使用 {@link #capture} 执行时的完整标准输出，流式读取时为空数组
+         */
+        public byte[] getStdout() {
+            return stdout;
+        }
+
+        public long getWallTimeMillis() {
+            return wallTimeMillis;
+        }
+
+        /**
+         * 退出码不为 0 时抛出异常，消息中带上标准错误的内容
+         */
+        public Result checkSuccess(String description) {
+            if (exitCode != 0) {
+                String detail = stderr.length() > MAX_MESSAGE_STDERR_CHARS
+                    ? stderr.substring(0, MAX_MESSAGE_STDERR_CHARS) + "..."
+                    : stderr;
+                throw new IllegalStateException(description + " failed with exit code: " + exitCode
+                    + (detail.isEmpty() ? "" : "\n" + detail));
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", command) + " exited with " + exitCode + " in " + wallTimeMillis + " ms";
+        }
+    }
+
+    // 标准错误只保留前 64KB，其余部分读出后丢弃
+    private static final int MAX_STDERR_BYTES = 64 * 1024;
+    // 异常消息会显示在对话框中，只带上标准错误的开头部分
+    private static final int MAX_MESSAGE_STDERR_CHARS = 2000;
+    private static final long WATCHDOG_INTERVAL_MILLIS = 100;
+
+    private final File workDir;
+    private final List<String> command;
+    private long timeoutMillis;
+
+    public ProcessRunner(File workDir, List<String> command) {
+        this.workDir = workDir;
+        this.command = new ArrayList<>(command);
+    }
+
+    /**
+     * 超过 timeoutMillis 仍未结束时结束进程并抛出异常，0 表示不限制
+     */
+    public ProcessRunner withTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * 执行命令并读取全部标准输出
+     */
+    public Result capture(@Nullable ProgressIndicator indicator) throws IOException {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        Result result = run(indicator, in -> in.transferTo(stdout));
+        return new Result(command, result.exitCode, result.stderr, stdout.toByteArray(), result.wallTimeMillis);
+    }
+
+    /**
+     * 执行命令，标准输出交给 consumer 流式读取。
+     * indicator 被取消时抛出 {@link ProcessCanceledException}，超时抛出 {@link IllegalStateException}，两种情况都会结束进程树。
+     */
+    public Result run(@Nullable ProgressIndicator indicator, OutputConsumer consumer) throws IOException {
+        long startNanos = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(workDir).start();
+        // 不向子进程提供输入，避免它等待标准输入
+        process.getOutputStream().close();
+
+        Future<String> stderr = AppExecutorUtil.getAppExecutorService().submit(() -> readBounded(process.getErrorStream()));
+        AtomicBoolean canceled = new AtomicBoolean();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        // 读取线程阻塞在管道上时无法检查取消状态，由看门狗结束进程，读取随之结束
+        ScheduledFuture<?> watchdog = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(() -> {
+            if (indicator != null && indicator.isCanceled()) {
+                canceled.set(true);
+                destroyTree(process);
+            } else if (timeoutMillis > 0 && elapsedMillis(startNanos) > timeoutMillis) {
+                timedOut.set(true);
+                destroyTree(process);
+            }
+        }, WATCHDOG_INTERVAL_MILLIS, WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        try {
+            try {
+                InputStream stdout = process.getInputStream();
+                consumer.consume(stdout);
+                // consumer 可能没有读完，剩余输出读出丢弃，保证进程能正常退出
+                stdout.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                // 看门狗结束进程后管道会被关闭，此时以取消或超时为准
+                if (!canceled.get() && !timedOut.get()) {
+                    throw e;
+                }
+            }
+            int exitCode = process.waitFor();
+
+            if (canceled.get()) {
+                throw new ProcessCanceledException();
+            }
+            if (timedOut.get()) {
+                throw new IllegalStateException(String.join(" ", command) + " timed out after " + timeoutMillis + " ms");
+            }
+            return new Result(command, exitCode, awaitStderr(stderr), new byte[0], elapsedMillis(startNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+        } finally {
+            watchdog.cancel(false);
+            if (process.isAlive()) {
+                destroyTree(process);
+            }
+        }
+    }
+
+    private static String readBounded(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            int room = MAX_STDERR_BYTES - buffer.size();
+            if (room > 0) {
+                buffer.write(chunk, 0, Math.min(room, read));
+            }
+        }
+        return buffer.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    private static String awaitStderr(Future<String> stderr) throws InterruptedException {
+        try {
+            // 进程已经退出，管道很快会关闭；子进程遗留的后代进程可能继续占用管道，因此只等待有限时间
+            return stderr.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            stderr.cancel(true);
+            return "";
+        }
+    }
+
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
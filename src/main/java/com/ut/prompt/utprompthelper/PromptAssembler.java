@@ -0,0 +1,127 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 把提示词和选中文件的片段按 token 预算拆成一个或多个提示词，每个提示词都带完整的提示词开头。
+ * 拆分用首次适应递减（first-fit decreasing）装箱：片段按估算的 token 数从大到小依次放进第一个放得下的部分，
+ * 放不下时新开一部分；每部分内的文件仍按原来的顺序输出。单个片段超过预算时单独成为一部分。
+ */
+final class PromptAssembler {
+
+    private PromptAssembler() {
+    }
+
+    /**
+     * maxTokens 不大于 0 时不拆分
+     */
+    static List<Chunk> assemble(String prompt, List<String> fragments, int maxTokens) {
+        int[] tokens = new int[fragments.size()];
+        long totalTokens = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = TokenEstimator.estimate(fragments.get(i));
+            totalTokens += tokens[i];
+        }
+        int headerTokens = TokenEstimator.estimate(header(prompt, 0, 0));
+        if (maxTokens <= 0 || headerTokens + totalTokens <= maxTokens) {
+            return List.of(build(prompt, 0, 0, fragments, allIndices(fragments.size()), tokens));
+        }
+
+        // 开头的分部标记按最长的情况预留
+        int capacity = Math.max(0, maxTokens - TokenEstimator.estimate(header(prompt, fragments.size(), fragments.size())));
+        Integer[] order = new Integer[fragments.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> tokens[i]).reversed());
+
+        List<Bin> bins = new ArrayList<>();
+        for (int fileIndex : order) {
+            Bin target = null;
+            for (Bin bin : bins) {
+                if (bin.used + tokens[fileIndex] <= capacity) {
+                    target = bin;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Bin();
+                bins.add(target);
+            }
+            target.add(fileIndex, tokens[fileIndex]);
+        }
+
+        // 每部分内恢复原来的文件顺序，各部分按第一个文件的位置排列
+        List<int[]> parts = new ArrayList<>();
+        for (Bin bin : bins) {
+            int[] members = Arrays.copyOf(bin.members, bin.size);
+            Arrays.sort(members);
+            parts.add(members);
+        }
+        parts.sort(Comparator.comparingInt(members -> members[0]));
+
+        List<Chunk> chunks = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            chunks.add(build(prompt, i + 1, parts.size(), fragments, parts.get(i), tokens));
+        }
+        return chunks;
+    }
+
+    private static Chunk build(String prompt, int part, int partCount, List<String> fragments, int[] members, int[] tokens) {
+        String header = header(prompt, part, partCount);
+        StringBuilder text = new StringBuilder(header);
+        int chunkTokens = TokenEstimator.estimate(header);
+        for (int fileIndex : members) {
+            text.append(fragments.get(fileIndex));
+            chunkTokens += tokens[fileIndex];
+        }
+        return new Chunk(text.toString(), members.length, chunkTokens);
+    }
+
+    private static String header(String prompt, int part, int partCount) {
+        if (partCount <= 1) {
+            return prompt + "\n\n";
+        }
+        return prompt + "\n（第 " + part + " / " + partCount + " 部分，其余文件在其它部分中）\n\n";
+    }
+
+    private static int[] allIndices(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    private static final class Bin {
+        int[] members = new int[4];
+        int size;
+        int used;
+
+        void add(int fileIndex, int fileTokens) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size++] = fileIndex;
+            used += fileTokens;
+        }
+    }
+
+    /**
+     * 拆分后的一个提示词
+     */
+    static final class Chunk {
+        final String text;
+        final int fileCount;
+        final int tokens;
+
+        Chunk(String text, int fileCount, int tokens) {
+            this.text = text;
+            this.fileCount = fileCount;
+            this.tokens = tokens;
+        }
+    }
+}
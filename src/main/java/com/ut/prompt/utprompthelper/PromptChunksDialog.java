@@ -0,0 +1,124 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBScrollPane;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 按 token 预算拆分后的提示词：逐个查看和复制，或全部导出为文本文件，分批交给模型处理
+ */
+public class PromptChunksDialog extends DialogWrapper {
+
+    private final List<PromptAssembler.Chunk> chunks;
+    private final JList<String> chunkList;
+    private final JTextArea chunkArea = new JTextArea(20, 60);
+
+    public PromptChunksDialog(Project project, List<PromptAssembler.Chunk> chunks) {
+        super(project);
+        this.chunks = chunks;
+        String[] labels = new String[chunks.size()];
+        for (int i = 0; i < labels.length; i++) {
+            PromptAssembler.Chunk chunk = chunks.get(i);
+            labels[i] = "第 " + (i + 1) + " 部分：" + chunk.fileCount + " 个文件，约 " + chunk.tokens + " tokens";
+        }
+        this.chunkList = new JList<>(labels);
+        setTitle("分批复制提示词（共 " + chunks.size() + " 部分）");
+        init();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+
+        chunkList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        chunkList.addListSelectionListener(e -> {
+            int index = chunkList.getSelectedIndex();
+            chunkArea.setText(index < 0 ? "" : chunks.get(index).text);
+            chunkArea.setCaretPosition(0);
+        });
+        JScrollPane listScrollPane = new JBScrollPane(chunkList);
+        listScrollPane.setPreferredSize(new Dimension(260, 300));
+
+        chunkArea.setEditable(false);
+        chunkArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JPanel chunkPanel = new JPanel(new BorderLayout());
+        chunkPanel.setBorder(BorderFactory.createTitledBorder("内容"));
+        chunkPanel.add(new JBScrollPane(chunkArea), BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton copyBtn = new JButton("📋 复制此部分");
+        copyBtn.addActionListener(e -> copySelected());
+        JButton exportBtn = new JButton("💾 导出全部...");
+        exportBtn.addActionListener(e -> exportAll());
+        buttonPanel.add(copyBtn);
+        buttonPanel.add(exportBtn);
+
+        mainPanel.add(listScrollPane, BorderLayout.WEST);
+        mainPanel.add(chunkPanel, BorderLayout.CENTER);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        chunkList.setSelectedIndex(0);
+        return mainPanel;
+    }
+
+    private void copySelected() {
+        int index = chunkList.getSelectedIndex();
+        if (index < 0) {
+            JOptionPane.showMessageDialog(null, "请先选择要复制的部分！", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(chunks.get(index).text), null);
+        // 依次复制时自动选中下一部分
+        if (index + 1 < chunks.size()) {
+            chunkList.setSelectedIndex(index + 1);
+        }
+        JOptionPane.showMessageDialog(null, "第 " + (index + 1) + " 部分已复制到剪贴板！", "成功", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void exportAll() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("选择导出目录");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(getContentPane()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File dir = chooser.getSelectedFile();
+        File[] files = new File[chunks.size()];
+        boolean exists = false;
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, "ut-prompt-" + (i + 1) + "-of-" + chunks.size() + ".txt");
+            exists |= files[i].exists();
+        }
+        if (exists) {
+            int result = JOptionPane.showConfirmDialog(
+                null,
+                "目录中已有同名文件，确定要覆盖吗？",
+                "确认覆盖",
+                JOptionPane.YES_NO_OPTION
+            );
+            if (result != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+
+        try {
+            for (int i = 0; i < files.length; i++) {
+                Files.writeString(files[i].toPath(), chunks.get(i).text, StandardCharsets.UTF_8);
+            }
+            JOptionPane.showMessageDialog(null, "已导出 " + files.length + " 个文件到 " + dir.getPath(), "成功", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(null, "导出失败: " + ex.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 结果对话框的预览区域：提示词 + 每个选中文件的片段。
+ * 编辑提示词和勾选文件的变化先积累起来，停止操作 150ms 后一次性应用；
+ * 少量变化直接在预览文档中替换提示词或插入、删除对应文件的片段，片段位置由 {@link FenwickTree} 中的片段长度前缀和算出，
+ * 全选/全不选等大量变化则在后台线程拼接完整文本后整体替换。每个文件的片段只生成一次。
+ * 分析过程中追加的文件直接接在文档末尾，不会推迟已经安排的更新，文件持续到达时预览也能及时刷新。
+ * 启用代码摘录时片段中还包含变更的代码（见 {@link SourceExcerpts}）。摘录的总上限按当前选中的文件依次分配，
+ * 放不下的文件改为一行说明；说明不会被缓存，取消勾选其它文件后这些文件重新附带摘录。
+ * 有文件因此被省略，或者这次变化会超出总上限时，不再逐个插入删除，而是整体重建。
+ * 复制等需要最新内容的操作通过 {@link #withText} 取得文本，需要整体重建时等后台重建完成后再回调，不在 EDT 上拼接。
+ * 除后台拼接外，所有方法都在 EDT 上调用。
+ */
+final class PromptPreview {
+
+    private static final int DEBOUNCE_MILLIS = 150;
+    // 积累的勾选变化超过这个数量时整体重建比逐个插入删除更快
+    private static final int MAX_SPLICES = 256;
+
+    private final ChangedFileTableModel model;
+    private final JTextArea area;
+    private final Supplier<String> prompt;
+    private final Alarm alarm;
+    private final Project project;
+    // 未启用代码摘录时为 null；分析线程预先生成片段时也会读取
+    private volatile SourceExcerpts excerpts;
+
+    // 文档当前显示的内容：提示词部分的长度、每个文件是否显示以及各片段的长度
+    private int headerLength;
+    private boolean[] rendered;
+    private FenwickTree lengths;
+    // 文档中已显示的摘录字节数合计，以及是否有文件因为总上限被省略了摘录
+    private long excerptBytes;
+    private boolean excerptsOmitted;
+
+    // 尚未应用到文档的变化
+    private final Set<Integer> dirtyFiles = new LinkedHashSet<>();
+    private boolean headerDirty;
+    private boolean rebuildNeeded = true;
+    // 后台重建的序号，之后又有整体替换时丢弃旧的结果
+    private int generation;
+    private boolean rebuilding;
+    // 等待文档更新到最新状态的回调
+    private final List<Consumer<String>> pendingReaders = new ArrayList<>();
+
+    PromptPreview(Project project, ChangedFileTableModel model, JTextArea area, Supplier<String> prompt, Disposable parent) {
+        this.project = project;
+        this.excerpts = SourceExcerpts.fromConfig(project);
+        this.model = model;
+        this.area = area;
+        this.prompt = prompt;
+        this.alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, parent);
+    }
+
+    void promptChanged() {
+        headerDirty = true;
+        schedule();
+    }
+
+    void fileToggled(int fileIndex) {
+        dirtyFiles.add(fileIndex);
+        schedule();
+    }
+
+    /**
+     * 全选、全不选等一次改变大量文件的操作
+     */
+    void selectionReset() {
+        rebuildNeeded = true;
+        schedule();
+    }
+
+    /**
+     * 模型末尾追加了文件
+     */
+    void filesAppended() {
+        if (alarm.isEmpty()) {
+            alarm.addRequest(this::flush, DEBOUNCE_MILLIS);
+        }
+    }
+
+    /**
+     * 模型中的文件被整体替换
+     */
+    void filesReplaced() {
+        excerpts = SourceExcerpts.fromConfig(project);
+        dirtyFiles.clear();
+        selectionReset();
+    }
+
+    /**
+     * 应用所有积累的变化后把预览文本交给 reader，复制前调用。
+     * 只需逐个插入删除时立即回调；需要整体重建时在后台重建完成后回调，对话框在此之前关闭则不再回调
+     */
+    void withText(Consumer<String> reader) {
+        alarm.cancelAllRequests();
+        pendingReaders.add(reader);
+        flush();
+    }
+
+    private void schedule() {
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::flush, DEBOUNCE_MILLIS);
+    }
+
+    private void flush() {
+        if (rebuilding) {
+            // 后台重建完成后会再次检查
+            return;
+        }
+        if (needsRebuild()) {
+            rebuildInBackground();
+        } else {
+            applyChanges();
+            notifyReaders();
+        }
+    }
+
+    private void notifyReaders() {
+        if (pendingReaders.isEmpty()) {
+            return;
+        }
+        String text = area.getText();
+        List<Consumer<String>> readers = new ArrayList<>(pendingReaders);
+        pendingReaders.clear();
+        for (Consumer<String> reader : readers) {
+            reader.accept(text);
+        }
+    }
+
+    private boolean needsRebuild() {
+        return rebuildNeeded || rendered == null || dirtyFiles.size() > MAX_SPLICES || exceedsExcerptBudget();
+    }
+
+    /**
+     * 应用积累的变化后摘录是否会超出总上限，或者已经有文件被省略了摘录而勾选又有变化
+     */
+    private boolean exceedsExcerptBudget() {
+        if (excerpts == null || rendered == null) {
+            return false;
+        }
+        if (excerptsOmitted) {
+            // 只改了提示词时省略的文件不变，可以直接替换；否则每次重建完成后都会再次重建
+            return !dirtyFiles.isEmpty() || rendered.length < model.getFileCount();
+        }
+        long total = excerptBytes;
+        for (int fileIndex : dirtyFiles) {
+            // 新追加的文件在下面按当前的勾选状态计算
+            if (fileIndex >= rendered.length) {
+                continue;
+            }
+            boolean selected = model.isSelected(fileIndex);
+            if (selected != rendered[fileIndex]) {
+                int bytes = excerptBytes(model.getRow(fileIndex));
+                total += selected ? bytes : -bytes;
+            }
+        }
+        for (int i = rendered.length; i < model.getFileCount(); i++) {
+            if (model.isSelected(i)) {
+                total += excerptBytes(model.getRow(i));
+            }
+        }
+        return total > excerpts.getMaxTotalBytes();
+    }
+
+    private void rebuildInBackground() {
+        String header = header();
+        ChangedFileTableModel.Row[] rows = snapshotRows();
+        boolean[] selection = snapshotSelection();
+        SourceExcerpts currentExcerpts = excerpts;
+        rebuildNeeded = false;
+        headerDirty = false;
+        dirtyFiles.clear();
+        rebuilding = true;
+        int expected = ++generation;
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            Rendering rendering = render(header, rows, selection, currentExcerpts);
+            SwingUtilities.invokeLater(() -> {
+                if (expected != generation || alarm.isDisposed()) {
+                    return;
+                }
+                rebuilding = false;
+                apply(rendering);
+                flush();
+            });
+        });
+    }
+
+    /**
+     * 把提示词、新追加的文件和勾选的变化逐个应用到文档上
+     */
+    private void applyChanges() {
+        appendNewFiles();
+        if (headerDirty) {
+            String header = header();
+            area.replaceRange(header, 0, headerLength);
+            headerLength = header.length();
+            headerDirty = false;
+        }
+        for (int fileIndex : dirtyFiles) {
+            boolean selected = model.isSelected(fileIndex);
+            if (selected == rendered[fileIndex]) {
+                continue;
+            }
+            int offset = headerLength + lengths.prefixSum(fileIndex);
+            String fragment = fragment(model.getRow(fileIndex));
+            int bytes = model.getRow(fileIndex).excerptBytes;
+            if (selected) {
+                area.insert(fragment, offset);
+                lengths.add(fileIndex, fragment.length());
+                excerptBytes += bytes;
+            } else {
+                area.replaceRange("", offset, offset + fragment.length());
+                lengths.add(fileIndex, -fragment.length());
+                excerptBytes -= bytes;
+            }
+            rendered[fileIndex] = selected;
+        }
+        dirtyFiles.clear();
+    }
+
+    /**
+     * 上次渲染之后追加的文件排在最后，选中的片段一次性接到文档末尾
+     */
+    private void appendNewFiles() {
+        int from = rendered.length;
+        int to = model.getFileCount();
+        if (from == to) {
+            return;
+        }
+        rendered = Arrays.copyOf(rendered, to);
+        lengths.grow(to);
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (model.isSelected(i)) {
+                String fragment = fragment(model.getRow(i));
+                text.append(fragment);
+                lengths.add(i, fragment.length());
+                excerptBytes += model.getRow(i).excerptBytes;
+                rendered[i] = true;
+            }
+        }
+        if (text.length() > 0) {
+            area.append(text.toString());
+        }
+    }
+
+    private void apply(Rendering rendering) {
+        area.setText(rendering.text);
+        headerLength = rendering.headerLength;
+        rendered = rendering.selection;
+        lengths = rendering.lengths;
+        excerptBytes = rendering.excerptBytes;
+        excerptsOmitted = rendering.excerptsOmitted;
+    }
+
+    /**
+     * 当前选中文件的片段，直接从预览文档中截取，与预览中的内容一致；分批复制时使用。
+     * 只在 {@link #withText} 的回调中调用，此时文档已经是最新的
+     */
+    List<String> selectedFragments() {
+        String text = area.getText();
+        List<String> fragments = new ArrayList<>();
+        for (int i = 0; i < rendered.length; i++) {
+            if (rendered[i]) {
+                int start = headerLength + lengths.prefixSum(i);
+                fragments.add(text.substring(start, headerLength + lengths.prefixSum(i + 1)));
+            }
+        }
+        return fragments;
+    }
+
+    private String header() {
+        return prompt.get() + "\n\n";
+    }
+
+    private ChangedFileTableModel.Row[] snapshotRows() {
+        ChangedFileTableModel.Row[] rows = new ChangedFileTableModel.Row[model.getFileCount()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = model.getRow(i);
+        }
+        return rows;
+    }
+
+    private boolean[] snapshotSelection() {
+        boolean[] selection = new boolean[model.getFileCount()];
+        for (int i = 0; i < selection.length; i++) {
+            selection[i] = model.isSelected(i);
+        }
+        return selection;
+    }
+
+    private static Rendering render(String header, ChangedFileTableModel.Row[] rows, boolean[] selection, SourceExcerpts excerpts) {
+        StringBuilder text = new StringBuilder(header);
+        int[] fragmentLengths = new int[selection.length];
+        long remaining = excerpts == null ? 0 : excerpts.getMaxTotalBytes();
+        long usedBytes = 0;
+        boolean omitted = false;
+        for (int i = 0; i < selection.length; i++) {
+            if (!selection[i]) {
+                continue;
+            }
+            String fragment = fragment(rows[i], excerpts);
+            if (excerpts != null) {
+                int bytes = rows[i].excerptBytes;
+                if (bytes <= remaining) {
+                    remaining -= bytes;
+                    usedBytes += bytes;
+                } else {
+                    // 放不下的文件只附带一行说明，之后更小的文件仍可能放得下
+                    fragment = renderFragment(rows[i], null, true);
+                    omitted = true;
+                }
+            }
+            text.append(fragment);
+            fragmentLengths[i] = fragment.length();
+        }
+        return new Rendering(text.toString(), header.length(), selection, new FenwickTree(fragmentLengths), usedBytes, omitted);
+    }
+
+    /**
+     * 文件在预览和复制内容中附带完整摘录的片段，首次使用时生成并缓存在 row 上；可以在任意线程调用
+     */
+    String fragment(ChangedFileTableModel.Row row) {
+        return fragment(row, excerpts);
+    }
+
+    private int excerptBytes(ChangedFileTableModel.Row row) {
+        fragment(row);
+        return row.excerptBytes;
+    }
+
+    private static String fragment(ChangedFileTableModel.Row row, SourceExcerpts excerpts) {
+        String fragment = row.fragment;
+        if (fragment == null) {
+            fragment = renderFragment(row, excerpts, false);
+            row.fragment = fragment;
+        }
+        return fragment;
+    }
+
+    /**
+     * omitted 为 true 时摘录超出总上限，只输出一行说明
+     */
+    private static String renderFragment(ChangedFileTableModel.Row row, SourceExcerpts excerpts, boolean omitted) {
+        StringBuilder content = new StringBuilder();
+        content.append(row.path).append("\n");
+        content.append("   变更行数: ").append(row.ranges.size()).append(" 处\n");
+        if (row.methods.isEmpty()) {
+            content.append("   具体位置: ");
+            row.ranges.appendTo(content);
+        } else {
+            // 方法签名比行号更便于模型定位，不再输出行号
+            content.append("   涉及方法: ").append(String.join(", ", row.methods));
+        }
+        if (excerpts != null || omitted) {
+            content.append("\n   变更代码:\n");
+            if (omitted) {
+                SourceExcerpts.appendOmitted(content, "   ");
+            } else {
+                row.excerptBytes = excerpts.appendTo(content, row.path, row.ranges, "   ");
+            }
+            // 与没有摘录时一样以一个空行结束
+            content.setLength(content.length() - 1);
+        }
+        content.append("\n\n");
+        return content.toString();
+    }
+
+    private static final class Rendering {
+        final String text;
+        final int headerLength;
+        final boolean[] selection;
+        final FenwickTree lengths;
+        final long excerptBytes;
+        final boolean excerptsOmitted;
+
+        Rendering(String text, int headerLength, boolean[] selection, FenwickTree lengths,
+                  long excerptBytes, boolean excerptsOmitted) {
+            this.text = text;
+            this.headerLength = headerLength;
+            this.selection = selection;
+            this.lengths = lengths;
+            this.excerptBytes = excerptBytes;
+            this.excerptsOmitted = excerptsOmitted;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.ut.prompt.utprompthelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 可选的语义过滤：比较 hunk 删除侧与新增侧的 token 序列，丢弃不改变行为的变更。
+ * 比较前去掉空白和注释、不影响行为的注解（@SuppressWarnings、@Override 等）、日志语句，
+ * 并把字符串和字符字面量统一为占位符；处理后两侧相同即认为只改了格式、注解、日志或字符串常量。
+ * <p>
+ * 过滤后的结果随分类结果一起保存在 {@link ClassificationCache} 中，同一对 blob 重复分析时不再重新切分 token。
+ */
+public final class SemanticFilter {
+
+    private static final Set<String> NEUTRAL_ANNOTATIONS = new HashSet<>(Arrays.asList(
+        "SuppressWarnings", "Override", "Deprecated", "SafeVarargs", "FunctionalInterface",
+        "Nullable", "NotNull", "Nonnull", "CheckForNull", "VisibleForTesting", "Generated"));
+    private static final Set<String> LOGGERS = new HashSet<>(Arrays.asList("log", "logger", "LOG", "LOGGER"));
+    private static final Set<String> LOG_LEVELS = new HashSet<>(Arrays.asList("trace", "debug", "info", "warn", "error", "fatal"));
+    private static final String LITERAL = "\"\"";
+
+    private SemanticFilter() {
+    }
+
+    /**
+     * hunk 是否只改变了格式、不影响行为的注解、日志语句或字符串常量
+     */
+    public static boolean isBehaviorNeutral(List<String> hunkLines) {
+        Tokenizer removed = new Tokenizer();
+        Tokenizer added = new Tokenizer();
+        for (String line : hunkLines) {
+            (line.charAt(0) == '+' ? added : removed).tokenize(line);
+        }
+        return normalize(removed.tokens).equals(normalize(added.tokens));
+    }
+
+    private static List<String> normalize(List<String> tokens) {
+        List<String> result = new ArrayList<>(tokens.size());
+        int i = 0;
+        while (i < tokens.size()) {
+            String token = tokens.get(i);
+            if (token.equals("@") && i + 1 < tokens.size()) {
+                int end = skipQualifiedName(tokens, i + 1);
+                if (NEUTRAL_ANNOTATIONS.contains(tokens.get(end - 1))) {
+                    i = end < tokens.size() && tokens.get(end).equals("(") ? skipParentheses(tokens, end) : end;
+                    continue;
+                }
+            }
+            int arguments = logCallArguments(tokens, i);
+            if (arguments > 0) {
+                int end = skipParentheses(tokens, arguments);
+                i = end < tokens.size() && tokens.get(end).equals(";") ? end + 1 : end;
+                continue;
+            }
+            result.add(token);
+            i++;
+        }
+        return result;
+    }
+
+    // log.info(...) / LOGGER.debug(...) / System.out.println(...)，返回参数列表 "(" 的位置，不是日志调用时返回 -1
+    private static int logCallArguments(List<String> tokens, int i) {
+        if (i + 3 < tokens.size() && LOGGERS.contains(tokens.get(i)) && tokens.get(i + 1).equals(".")
+            && LOG_LEVELS.contains(tokens.get(i + 2)) && tokens.get(i + 3).equals("(")) {
+            return i + 3;
+        }
+        if (i + 5 < tokens.size() && tokens.get(i).equals("System") && tokens.get(i + 1).equals(".")
+            && (tokens.get(i + 2).equals("out") || tokens.get(i + 2).equals("err")) && tokens.get(i + 3).equals(".")
+            && tokens.get(i + 4).startsWith("print") && tokens.get(i + 5).equals("(")) {
+            return i + 5;
+        }
+        return -1;
+    }
+
+    // 跳过 a.b.C 形式的名字，返回名字之后的位置
+    private static int skipQualifiedName(List<String> tokens, int i) {
+        int end = i + 1;
+        while (end + 1 < tokens.size() && tokens.get(end).equals(".")) {
+            end += 2;
+        }
+        return end;
+    }
+
+    // i 指向 "("，返回与之配对的 ")" 之后的位置；hunk 截断了括号时跳到末尾
+    private static int skipParentheses(List<String> tokens, int i) {
+        if (i >= tokens.size() || !tokens.get(i).equals("(")) {
+            return i;
+        }
+        int depth = 0;
+        for (int j = i; j < tokens.size(); j++) {
+            String token = tokens.get(j);
+            if (token.equals("(")) {
+                depth++;
+            } else if (token.equals(")") && --depth == 0) {
+                return j + 1;
+            }
+        }
+        return tokens.size();
+    }
+
+    /**
+     * 把 diff 一侧的各行切分为 token，跳过空白与注释；块注释和文本块的状态跨行保留
+     */
+    private static final class Tokenizer {
+        private final List<String> tokens = new ArrayList<>();
+        private boolean inBlockComment;
+        private boolean inTextBlock;
+
+        void tokenize(String line) {
+            int length = line.length();
+            int i = 1;
+            while (i < length) {
+                char ch = line.charAt(i);
+                if (inBlockComment) {
+                    if (ch == '*' && i + 1 < length && line.charAt(i + 1) == '/') {
+                        inBlockComment = false;
+                        i += 2;
+                    } else {
+                        i++;
+                    }
+                } else if (inTextBlock) {
+                    if (ch == '\\') {
+                        i += 2;
+                    } else if (line.startsWith("\"\"\"", i)) {
+                        inTextBlock = false;
+                        i += 3;
+                    } else {
+                        i++;
+                    }
+                } else if (Character.isWhitespace(ch) || ch <= ' ') {
+                    i++;
+                } else if (line.startsWith("//", i)) {
+                    return;
+                } else if (line.startsWith("/*", i)) {
+                    inBlockComment = true;
+                    i += 2;
+                } else if (line.startsWith("\"\"\"", i)) {
+                    tokens.add(LITERAL);
+                    inTextBlock = true;
+                    i += 3;
+                } else if (ch == '"' || ch == '\'') {
+                    tokens.add(LITERAL);
+                    i = skipLiteral(line, i + 1, ch);
+                } else if (Character.isJavaIdentifierPart(ch)) {
+                    int start = i;
+                    while (i < length && Character.isJavaIdentifierPart(line.charAt(i))) {
+                        i++;
+                    }
+                    tokens.add(line.substring(start, i));
+                } else {
+                    tokens.add(String.valueOf(ch));
+                    i++;
+                }
+            }
+        }
+
+        private static int skipLiteral(String line, int i, char quote) {
+            while (i < line.length()) {
+                char ch = line.charAt(i);
+                if (ch == '\\') {
+                    i += 2;
+                } else if (ch == quote) {
+                    return i + 1;
+                } else {
+                    i++;
+                }
+            }
+            return line.length();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把变更文件按工作量均衡地分成若干片，在有界线程池上并行计算 diff 与分类，最后按路径顺序合并结果
+ */
+final class ShardedDiffRunner {
+
+    private ShardedDiffRunner() {
+    }
+
+    static ChangeSet run(DiffProvider provider,
+                         String baseRef,
+                         PathRules pathRules,
+                         List<ChangedFile> files,
+                         int parallelism,
+                         AnalysisListener listener,
+                         ProgressIndicator indicator) throws Exception {
+        List<List<String>> shards = balance(files, parallelism);
+        AtomicInteger processedFiles = new AtomicInteger();
+        ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("UTPrompt Diff", parallelism);
+        List<Future<ChangeSet>> futures = new ArrayList<>();
+        try {
+            for (List<String> shard : shards) {
+                futures.add(executor.submit(() -> {
+                    ChangeCollector collector = new ChangeCollector(indicator, processedFiles, files.size(), listener);
+                    // 在工作线程上共享同一个进度指示器，取消时每个分片都会结束自己的 git 进程
+                    ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+                        try {
+                            provider.diff(baseRef, shard, pathRules, collector, indicator);
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+                    }, indicator);
+                    return collector.getChanges();
+                }));
+            }
+
+            // 结果按路径排序合并，与分片方式和完成顺序无关
+            List<ChangeSet> parts = new ArrayList<>();
+            for (Future<ChangeSet> future : futures) {
+                parts.add(await(future, indicator));
+            }
+            return ChangeSet.merge(parts);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 等待后台任务完成，期间每 100ms 检查一次取消状态；任务抛出的异常原样抛出
+     */
+    static <T> T await(Future<T> future, ProgressIndicator indicator) throws Exception {
+        while (true) {
+            indicator.checkCanceled();
+            try {
+                return future.get(100, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+                // 继续等待，同时检查取消状态
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+    }
+
+    /**
+     * 最长处理时间优先（LPT）的贪心分配：按权重从大到小，每个文件放进当前总权重最小的分片。
+     * 重命名的文件同时带上旧路径，保证 git 在分片内仍能识别重命名。
+     */
+    static List<List<String>> balance(List<ChangedFile> files, int shardCount) {
+        int count = Math.max(1, Math.min(shardCount, files.size()));
+        List<List<String>> shards = new ArrayList<>();
+        PriorityQueue<long[]> loads = new PriorityQueue<>(Comparator.<long[]>comparingLong(load -> load[0]).thenComparingLong(load -> load[1]));
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<>());
+            loads.add(new long[]{0, i});
+        }
+
+        List<ChangedFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(ChangedFile::weight).reversed().thenComparing(ChangedFile::getPath));
+        for (ChangedFile file : sorted) {
+            long[] lightest = loads.poll();
+            List<String> shard = shards.get((int) lightest[1]);
+            shard.add(file.getPath());
+            if (file.getOldPath() != null) {
+                shard.add(file.getOldPath());
+            }
+            lightest[0] += file.weight();
+            loads.add(lightest);
+        }
+        return shards;
+    }
+}
@@ -10,6 +10,40 @@ public class SimplePromptConfig {
     
     private String customPrompt = "";
     private boolean useCustomPrompt = false;
+    private String includePatterns = PathRules.DEFAULT_INCLUDES;
+    private String excludePatterns = PathRules.DEFAULT_EXCLUDES;
+    private int maxFileChangedLines = DEFAULT_MAX_FILE_CHANGED_LINES;
+    private long maxTotalChangedLines = DEFAULT_MAX_TOTAL_CHANGED_LINES;
+    private String baseBranch = DEFAULT_BASE_BRANCH;
+    private boolean useMergeBase = false;
+    private int rangeMergeGap = DEFAULT_RANGE_MERGE_GAP;
+    private boolean describeByMethod = true;
+    private boolean semanticFilter = false;
+    private int gitTimeoutSeconds = DEFAULT_GIT_TIMEOUT_SECONDS;
+    private boolean prewarm = true;
+    private int maxPromptTokens = DEFAULT_MAX_PROMPT_TOKENS;
+    private boolean includeSourceExcerpts = false;
+    private int excerptContextLines = DEFAULT_EXCERPT_CONTEXT_LINES;
+    private int maxExcerptFileBytes = DEFAULT_MAX_EXCERPT_FILE_BYTES;
+    private long maxExcerptTotalBytes = DEFAULT_MAX_EXCERPT_TOTAL_BYTES;
+    
+    // 默认的比较基线分支
+    public static final String DEFAULT_BASE_BRANCH = "master";
+    // 单个文件变更行数上限（超过的多为生成代码），0 表示不限制
+    public static final int DEFAULT_MAX_FILE_CHANGED_LINES = 5000;
+    // 一次分析的总变更行数预算，0 表示不限制
+    public static final long DEFAULT_MAX_TOTAL_CHANGED_LINES = 200000;
+    // 间隔不超过这么多行的变更范围合并为一个，负数表示不合并
+    public static final int DEFAULT_RANGE_MERGE_GAP = 3;
+    // 单条 git 命令的超时时间（秒），0 表示不限制
+    public static final int DEFAULT_GIT_TIMEOUT_SECONDS = 300;
+    // 单个提示词的估算 token 数上限，超过时拆成多个提示词，0 表示不限制
+    public static final int DEFAULT_MAX_PROMPT_TOKENS = 32000;
+    // 代码摘录中每个变更范围前后附带的上下文行数
+    public static final int DEFAULT_EXCERPT_CONTEXT_LINES = 3;
+    // 单个文件和所有文件的代码摘录字节数上限
+    public static final int DEFAULT_MAX_EXCERPT_FILE_BYTES = 8 * 1024;
+    public static final long DEFAULT_MAX_EXCERPT_TOTAL_BYTES = 256 * 1024;
     
     // 默认提示词
     public static final String DEFAULT_PROMPT = "基于代码库的现有单元测试风格，为以下变更生成单元测试，具体要求：\n" +
@@ -41,12 +75,43 @@ public class SimplePromptConfig {
                     props.load(fis);
                     customPrompt = props.getProperty("customPrompt", "");
                     useCustomPrompt = Boolean.parseBoolean(props.getProperty("useCustomPrompt", "false"));
+                    includePatterns = props.getProperty("includePatterns", PathRules.DEFAULT_INCLUDES);
+                    excludePatterns = props.getProperty("excludePatterns", PathRules.DEFAULT_EXCLUDES);
+                    maxFileChangedLines = intProperty(props, "maxFileChangedLines", DEFAULT_MAX_FILE_CHANGED_LINES);
+                    maxTotalChangedLines = longProperty(props, "maxTotalChangedLines", DEFAULT_MAX_TOTAL_CHANGED_LINES);
+                    baseBranch = props.getProperty("baseBranch", DEFAULT_BASE_BRANCH);
+                    useMergeBase = Boolean.parseBoolean(props.getProperty("useMergeBase", "false"));
+                    rangeMergeGap = intProperty(props, "rangeMergeGap", DEFAULT_RANGE_MERGE_GAP);
+                    describeByMethod = Boolean.parseBoolean(props.getProperty("describeByMethod", "true"));
+                    semanticFilter = Boolean.parseBoolean(props.getProperty("semanticFilter", "false"));
+                    gitTimeoutSeconds = intProperty(props, "gitTimeoutSeconds", DEFAULT_GIT_TIMEOUT_SECONDS);
+                    prewarm = Boolean.parseBoolean(props.getProperty("prewarm", "true"));
+                    maxPromptTokens = intProperty(props, "maxPromptTokens", DEFAULT_MAX_PROMPT_TOKENS);
+                    includeSourceExcerpts = Boolean.parseBoolean(props.getProperty("includeSourceExcerpts", "false"));
+                    excerptContextLines = intProperty(props, "excerptContextLines", DEFAULT_EXCERPT_CONTEXT_LINES);
+                    maxExcerptFileBytes = intProperty(props, "maxExcerptFileBytes", DEFAULT_MAX_EXCERPT_FILE_BYTES);
+                    maxExcerptTotalBytes = longProperty(props, "maxExcerptTotalBytes", DEFAULT_MAX_EXCERPT_TOTAL_BYTES);
                 }
             }
-        } catch (Exception e) {
-            // 如果加载失败，使用默认值
-            customPrompt = "";
-            useCustomPrompt = false;
+        } catch (IOException | IllegalArgumentException e) {
+            // 文件无法读取或格式错误（例如非法的 Unicode 转义）时所有字段保持默认值
+        }
+    }
+    
+    // 数值写错时只有这一项使用默认值，其它配置（例如自定义提示词）不受影响
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        try {
+            return Integer.parseInt(props.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    private static long longProperty(Properties props, String key, long defaultValue) {
+        try {
+            return Long.parseLong(props.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
         }
     }
     
@@ -60,6 +125,22 @@ public class SimplePromptConfig {
             Properties props = new Properties();
             props.setProperty("customPrompt", customPrompt);
             props.setProperty("useCustomPrompt", String.valueOf(useCustomPrompt));
+            props.setProperty("includePatterns", includePatterns);
+            props.setProperty("excludePatterns", excludePatterns);
+            props.setProperty("maxFileChangedLines", String.valueOf(maxFileChangedLines));
+            props.setProperty("maxTotalChangedLines", String.valueOf(maxTotalChangedLines));
+            props.setProperty("baseBranch", baseBranch);
+            props.setProperty("useMergeBase", String.valueOf(useMergeBase));
+            props.setProperty("rangeMergeGap", String.valueOf(rangeMergeGap));
+            props.setProperty("describeByMethod", String.valueOf(describeByMethod));
+            props.setProperty("semanticFilter", String.valueOf(semanticFilter));
+            props.setProperty("gitTimeoutSeconds", String.valueOf(gitTimeoutSeconds));
+            props.setProperty("prewarm", String.valueOf(prewarm));
+            props.setProperty("maxPromptTokens", String.valueOf(maxPromptTokens));
+            props.setProperty("includeSourceExcerpts", String.valueOf(includeSourceExcerpts));
+            props.setProperty("excerptContextLines", String.valueOf(excerptContextLines));
+            props.setProperty("maxExcerptFileBytes", String.valueOf(maxExcerptFileBytes));
+            props.setProperty("maxExcerptTotalBytes", String.valueOf(maxExcerptTotalBytes));
             
             try (FileOutputStream fos = new FileOutputStream(CONFIG_FILE)) {
                 props.store(fos, "UTPromptHelper Configuration");
@@ -88,6 +169,157 @@ public class SimplePromptConfig {
         saveConfig();
     }
     
+    // 参与分析的文件规则（git glob 语法，逗号分隔）
+    public String getIncludePatterns() {
+        return includePatterns;
+    }
+    
+    public void setIncludePatterns(String includePatterns) {
+        this.includePatterns = includePatterns;
+        saveConfig();
+    }
+    
+    public String getExcludePatterns() {
+        return excludePatterns;
+    }
+    
+    public void setExcludePatterns(String excludePatterns) {
+        this.excludePatterns = excludePatterns;
+        saveConfig();
+    }
+    
+    public int getMaxFileChangedLines() {
+        return maxFileChangedLines;
+    }
+    
+    public void setMaxFileChangedLines(int maxFileChangedLines) {
+        this.maxFileChangedLines = maxFileChangedLines;
+        saveConfig();
+    }
+    
+    public long getMaxTotalChangedLines() {
+        return maxTotalChangedLines;
+    }
+    
+    public void setMaxTotalChangedLines(long maxTotalChangedLines) {
+        this.maxTotalChangedLines = maxTotalChangedLines;
+        saveConfig();
+    }
+    
+    // 比较的基线分支，可以是本地分支、远程分支（如 origin/develop）或标签
+    public String getBaseBranch() {
+        return baseBranch == null || baseBranch.trim().isEmpty() ? DEFAULT_BASE_BRANCH : baseBranch.trim();
+    }
+    
+    public void setBaseBranch(String baseBranch) {
+        this.baseBranch = baseBranch;
+        saveConfig();
+    }
+    
+    // 为 true 时与当前分支和基线分支的分叉点（merge-base）比较，而不是基线分支的最新提交
+    public boolean isUseMergeBase() {
+        return useMergeBase;
+    }
+    
+    public void setUseMergeBase(boolean useMergeBase) {
+        this.useMergeBase = useMergeBase;
+        saveConfig();
+    }
+    
+    public int getRangeMergeGap() {
+        return rangeMergeGap;
+    }
+    
+    public void setRangeMergeGap(int rangeMergeGap) {
+        this.rangeMergeGap = rangeMergeGap;
+        saveConfig();
+    }
+    
+    // 为 true 时提示词中列出变更所在的方法，而不是行号（需要 Java 插件，无法解析的文件仍使用行号）
+    public boolean isDescribeByMethod() {
+        return describeByMethod;
+    }
+    
+    public void setDescribeByMethod(boolean describeByMethod) {
+        this.describeByMethod = describeByMethod;
+        saveConfig();
+    }
+    
+    // 为 true 时额外过滤只改变注解、日志语句、字符串常量或格式的变更
+    public boolean isSemanticFilter() {
+        return semanticFilter;
+    }
+    
+    public void setSemanticFilter(boolean semanticFilter) {
+        this.semanticFilter = semanticFilter;
+        saveConfig();
+    }
+    
+    public int getGitTimeoutSeconds() {
+        return gitTimeoutSeconds;
+    }
+    
+    public void setGitTimeoutSeconds(int gitTimeoutSeconds) {
+        this.gitTimeoutSeconds = gitTimeoutSeconds;
+        saveConfig();
+    }
+    
+    // 为 true 时在项目打开和切换分支后于后台预先分析变更
+    public boolean isPrewarm() {
+        return prewarm;
+    }
+    
+    public void setPrewarm(boolean prewarm) {
+        this.prewarm = prewarm;
+        saveConfig();
+    }
+    
+    public int getMaxPromptTokens() {
+        return maxPromptTokens;
+    }
+    
+    public void setMaxPromptTokens(int maxPromptTokens) {
+        this.maxPromptTokens = maxPromptTokens;
+        saveConfig();
+    }
+    
+    // 为 true 时在提示词中附带变更的代码及其上下文
+    public boolean isIncludeSourceExcerpts() {
+        return includeSourceExcerpts;
+    }
+    
+    public void setIncludeSourceExcerpts(boolean includeSourceExcerpts) {
+        this.includeSourceExcerpts = includeSourceExcerpts;
+        saveConfig();
+    }
+    
+    public int getExcerptContextLines() {
+        return excerptContextLines;
+    }
+    
+    public void setExcerptContextLines(int excerptContextLines) {
+        this.excerptContextLines = excerptContextLines;
+        saveConfig();
+    }
+    
+    public int getMaxExcerptFileBytes() {
+        return maxExcerptFileBytes;
+    }
+    
+    public void setMaxExcerptFileBytes(int maxExcerptFileBytes) {
+        this.maxExcerptFileBytes = maxExcerptFileBytes;
+        saveConfig();
+    }
+    
+    public long getMaxExcerptTotalBytes() {
+        return maxExcerptTotalBytes;
+    }
+    
+    public void setMaxExcerptTotalBytes(long maxExcerptTotalBytes) {
+        this.maxExcerptTotalBytes = maxExcerptTotalBytes;
+        saveConfig();
+    }
+    
     public String getEffectivePrompt() {
         return useCustomPrompt && !customPrompt.trim().isEmpty() ? customPrompt : DEFAULT_PROMPT;
     }
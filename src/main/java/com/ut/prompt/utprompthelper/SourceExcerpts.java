@@ -0,0 +1,325 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 提示词中的变更代码摘录：每个变更范围连同前后若干行上下文，带行号输出。
+ * 摘录的内容与计算行号时比较的内容一致：使用 IDE Git 插件比较的根目录读取 IDE 中的文档（包括未保存的修改），
+ * 文件没有加载到 IDE 中时读取磁盘；使用 git 命令行比较的根目录总是读取磁盘。
+ * 磁盘文件按 IDE 识别的编码流式读取，只把需要的行复制出来，不会整体读入文件，也不会在读取结束后继续占用文件。
+ * 这里只按单个文件的字节上限截断，所有文件的总上限在拼接提示词时按当时选中的文件分配（见 {@link PromptPreview}）。
+ * 可以在多个线程中同时使用。
+ */
+final class SourceExcerpts {
+
+    private static final Logger LOG = Logger.getInstance(SourceExcerpts.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Project project;
+    // 使用 IDE Git 插件比较的根目录，这些根目录下的文件优先读取文档
+    private final List<String> documentRoots;
+    private final int contextLines;
+    private final int maxFileBytes;
+    private final long maxTotalBytes;
+
+    private SourceExcerpts(Project project, List<String> documentRoots, int contextLines, int maxFileBytes, long maxTotalBytes) {
+        this.project = project;
+        this.documentRoots = documentRoots;
+        this.contextLines = Math.max(0, contextLines);
+        this.maxFileBytes = maxFileBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * 按当前配置创建，未启用摘录时返回 null
+     */
+    @Nullable
+    static SourceExcerpts fromConfig(Project project) {
+        SimplePromptConfig config = SimplePromptConfig.getInstance();
+        if (!config.isIncludeSourceExcerpts()) {
+            return null;
+        }
+        List<String> documentRoots = new ArrayList<>();
+        for (VirtualFile root : GitRoots.find(project)) {
+            if (DiffProvider.comparesDocuments(project, root)) {
+                documentRoots.add(root.getPath() + "/");
+            }
+        }
+        return new SourceExcerpts(project, documentRoots, config.getExcerptContextLines(), config.getMaxExcerptFileBytes(),
+            config.getMaxExcerptTotalBytes());
+    }
+
+    /**
+     * 所有选中文件的摘录合计的字节数上限
+     */
+    long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    /**
+     * 把 path 中 ranges 对应的代码追加到 content，每行以 indent 开头；文件无法读取时只追加一行说明。
+     * 返回摘录中代码的字节数，用于分配总上限
+     */
+    int appendTo(StringBuilder content, String path, ChangeRanges ranges, String indent) {
+        int[] blocks = blocks(ranges);
+        if (blocks.length == 0) {
+            return 0;
+        }
+        Excerpt excerpt = new Excerpt(content, indent, maxFileBytes);
+        File file = resolve(path);
+        VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+        if (virtualFile != null && !virtualFile.isValid()) {
+            virtualFile = null;
+        }
+        try {
+            if (virtualFile == null || !comparesDocument(file) || !readDocument(virtualFile, blocks, excerpt)) {
+                // 按 IDE 识别的文件编码解码，GBK 等非 UTF-8 的源文件也不会乱码
+                readFile(file, virtualFile == null ? StandardCharsets.UTF_8 : virtualFile.getCharset(), blocks, excerpt);
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to read excerpt of " + path + ": " + e.getMessage());
+            excerpt.unreadable();
+        }
+        return excerpt.usedBytes;
+    }
+
+    /**
+     * 超出总上限、不附带摘录的文件在提示词中的说明
+     */
+    static void appendOmitted(StringBuilder content, String indent) {
+        content.append(indent).append("（已达到代码摘录的总长度上限，省略）\n");
+    }
+
+    private File resolve(String path) {
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return file;
+        }
+        String basePath = project.getBasePath();
+        return basePath == null ? file : new File(basePath, path);
+    }
+
+    private boolean comparesDocument(File file) {
+        String path = file.getPath().replace(File.separatorChar, '/');
+        for (String root : documentRoots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文件在 IDE 中已加载时从文档读取（包括未保存的修改），返回是否读取了
+     */
+    private boolean readDocument(VirtualFile virtualFile, int[] blocks, Excerpt excerpt) {
+        return ReadAction.compute(() -> {
+            FileDocumentManager manager = FileDocumentManager.getInstance();
+            Document document = manager.getCachedDocument(virtualFile);
+            if (document == null) {
+                return false;
+            }
+            CharSequence text = document.getImmutableCharSequence();
+            int lineCount = document.getLineCount();
+            for (int b = 0; b < blocks.length; b += 2) {
+                int last = Math.min(blocks[b + 1], lineCount);
+                for (int line = blocks[b]; line <= last; line++) {
+                    CharSequence lineText = text.subSequence(document.getLineStartOffset(line - 1), document.getLineEndOffset(line - 1));
+                    if (!excerpt.addLine(line, lineText.toString(), utf8Length(lineText))) {
+                        return true;
+                    }
+                }
+                excerpt.endBlock();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * 按块读取并解码磁盘文件，扫描换行符定位需要的行，只保留这些行；
+     * 行在读取过程中就检查字节预算，很长的行不会整体读入内存
+     */
+    private static void readFile(File file, Charset charset, int[] blocks, Excerpt excerpt) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), charset)) {
+            char[] buffer = new char[BUFFER_SIZE];
+            // 当前行中已经读到的部分，只在行位于某个块内时累积
+            StringBuilder pending = new StringBuilder();
+            int pendingBytes = 0;
+            int line = 1;
+            int block = 0;
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    if (line >= blocks[block]) {
+                        pending.append(buffer, lineStart, i - lineStart);
+                        if (!emitLine(pending, line, excerpt)) {
+                            return;
+                        }
+                        pendingBytes = 0;
+                    }
+                    lineStart = i + 1;
+                    line++;
+                    if (line > blocks[block + 1]) {
+                        excerpt.endBlock();
+                        block += 2;
+                        if (block == blocks.length) {
+                            return;
+                        }
+                    }
+                }
+                if (line >= blocks[block]) {
+                    pending.append(buffer, lineStart, read - lineStart);
+                    pendingBytes += utf8Length(buffer, lineStart, read);
+                    if (pendingBytes > excerpt.remainingBytes()) {
+                        excerpt.truncate();
+                        return;
+                    }
+                }
+            }
+            // 文件末尾没有换行符的最后一行
+            if (pending.length() > 0) {
+                emitLine(pending, line, excerpt);
+            }
+        }
+    }
+
+    private static boolean emitLine(StringBuilder pending, int line, Excerpt excerpt) {
+        int length = pending.length() > 0 && pending.charAt(pending.length() - 1) == '\r' ? pending.length() - 1 : pending.length();
+        String text = pending.substring(0, length);
+        pending.setLength(0);
+        return excerpt.addLine(line, text, utf8Length(text));
+    }
+
+    /**
+     * 变更范围加上上下文后的行号区间（从 1 开始，闭区间），按起始行排序并合并重叠或相邻的区间
+     */
+    private int[] blocks(ChangeRanges ranges) {
+        long[] sorted = new long[ranges.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            int start = Math.max(1, ranges.getStart(i) - contextLines);
+            // 纯删除的范围行数为 0，显示删除位置附近的上下文
+            int end = Math.max(ranges.getStart(i), ranges.getEnd(i)) + contextLines;
+            // 删除了第 0 行之后的内容且不要上下文时没有可以显示的行
+            sorted[i] = end < start ? Long.MAX_VALUE : ((long) start << 32) | (end & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted);
+
+        int[] blocks = new int[sorted.length * 2];
+        int count = 0;
+        for (long packed : sorted) {
+            if (packed == Long.MAX_VALUE) {
+                break;
+            }
+            int start = (int) (packed >>> 32);
+            int end = (int) packed;
+            if (count > 0 && start <= blocks[count - 1] + 1) {
+                blocks[count - 1] = Math.max(blocks[count - 1], end);
+            } else {
+                blocks[count++] = start;
+                blocks[count++] = end;
+            }
+        }
+        return Arrays.copyOf(blocks, count);
+    }
+
+    private static int utf8Length(CharSequence text) {
+        return utf8Length(text, 0, text.length());
+    }
+
+    private static int utf8Length(char[] text, int from, int to) {
+        return utf8Length(CharBuffer.wrap(text), from, to);
+    }
+
+    private static int utf8Length(CharSequence text, int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 正在生成的一个文件的摘录，超过字节预算时停止
+     */
+    private static final class Excerpt {
+        private final StringBuilder content;
+        private final String indent;
+        private final int budget;
+        private int usedBytes;
+        private boolean truncated;
+        private boolean pendingGap;
+
+        Excerpt(StringBuilder content, String indent, int budget) {
+            this.content = content;
+            this.indent = indent;
+            this.budget = budget;
+        }
+
+        int remainingBytes() {
+            return budget - usedBytes;
+        }
+
+        /**
+         * 返回 false 表示预算已用完，不再接受更多的行
+         */
+        boolean addLine(int line, String text, int bytes) {
+            if (usedBytes + bytes > budget) {
+                truncate();
+                return false;
+            }
+            if (pendingGap) {
+                content.append(indent).append("...\n");
+                pendingGap = false;
+            }
+            content.append(indent).append(line).append(" | ").append(text).append('\n');
+            usedBytes += bytes;
+            return true;
+        }
+
+        void truncate() {
+            truncated = true;
+            content.append(indent).append("...（超出代码摘录的长度上限，其余省略）\n");
+        }
+
+        void endBlock() {
+            pendingGap = !truncated && usedBytes > 0;
+        }
+
+        void unreadable() {
+            content.append(indent).append("（无法读取文件内容）\n");
+        }
+    }
+}
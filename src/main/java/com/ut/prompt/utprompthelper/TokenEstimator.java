@@ -0,0 +1,38 @@
+package com.ut.prompt.utprompthelper;
+
+/**
+ * 在本地快速估算文本的 token 数，不依赖具体模型的分词表。
+ * 按常见 BPE 分词器的经验规则计数：连续的字母数字大约每 4 个字符一个 token，标点和其它符号各一个，
+ * 空白不单独计数，中日韩文字按每字 1.5 个计。结果通常略大于实际值，用于预算时偏保守。
+ */
+final class TokenEstimator {
+
+    // 连续字母数字平均每个 token 的字符数
+    private static final int CHARS_PER_WORD_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    static int estimate(CharSequence text) {
+        int tokens = 0;
+        int wordLength = 0;
+        int cjkCount = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) && c < 0x2E80) {
+                wordLength++;
+                continue;
+            }
+            tokens += (wordLength + CHARS_PER_WORD_TOKEN - 1) / CHARS_PER_WORD_TOKEN;
+            wordLength = 0;
+            if (c >= 0x2E80) {
+                // 中日韩文字、全角标点等
+                cjkCount++;
+            } else if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        tokens += (wordLength + CHARS_PER_WORD_TOKEN - 1) / CHARS_PER_WORD_TOKEN;
+        return tokens + (cjkCount * 3 + 1) / 2;
+    }
+}
@@ -0,0 +1,566 @@
+package com.ut.prompt.utprompthelper;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.SearchTextField;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableColumnModel;
+import java.awt.*;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.StringSelection;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 展示变更分析结果的对话框：选择文件、编辑提示词、预览并复制，两个 Action 共用。
+ * 全局分析时对话框在分析开始时就打开，文件随分析进度逐批出现，分析完成前也可以复制已经到达的文件。
+ */
+public class UTPromptDialog extends DialogWrapper {
+    // 分析中到达的文件每隔这么久批量加入列表一次
+    private static final long DRAIN_INTERVAL_MILLIS = 100;
+    // 悬停提示中最多列出的跳过文件数
+    private static final int MAX_SKIPPED_TOOLTIP_FILES = 50;
+    // 项目中正在接收分析结果的对话框
+    private static final Key<UTPromptDialog> ANALYSIS_DIALOG = Key.create("UTPromptDialog.analysis");
+
+    private final Project project;
+    // 合并相近范围之前的范围总数，用于在界面上对比
+    private int originalRangeCount;
+    private final ChangedFileTableModel fileModel;
+    private final JTextArea promptTextArea = new JTextArea(3, 50);
+    private final JTextArea previewArea = new JTextArea(10, 50);
+    private final JLabel statusLabel = new JLabel("正在分析 Git 变更...");
+    // 因超出变更行数上限而没有分析的文件，没有时不显示
+    private final JLabel skippedLabel = new JLabel();
+    private final SimplePromptConfig config = SimplePromptConfig.getInstance();
+    private TitledBorder fileBorder;
+    private PromptPreview preview;
+
+    // 分析进行中时接收逐个文件的结果，取消分析的回调；结果已完整时为 null
+    private final StreamingListener streamingListener;
+    private final Runnable cancelAnalysis;
+    private boolean analysisDone;
+    // 分析在完成前被取消，列表中只有取消前已经分析完的文件
+    private boolean analysisCancelled;
+
+    public UTPromptDialog(Project project, ChangeSet changes) {
+        super(project);
+        this.project = project;
+        this.originalRangeCount = changes.getRangeCount();
+        this.fileModel = new ChangedFileTableModel(changes.coalesce(config.getRangeMergeGap()));
+        this.streamingListener = null;
+        this.cancelAnalysis = null;
+        this.analysisDone = true;
+        setTitle("UT提示词助手");
+        init();
+        showSkippedFiles(changes.getSkippedFiles());
+    }
+
+    /**
+     * 在分析开始时打开的对话框：文件通过 {@link #getAnalysisListener()} 逐批加入，分析完成后调用 {@link #complete}。
+     * 后台任务的完成回调在非模态状态下执行，会被模态对话框挡住，因此这里使用非模态对话框。
+     * 分析完成前关闭对话框时调用 cancelAnalysis。
+     */
+    public UTPromptDialog(Project project, Runnable cancelAnalysis) {
+        super(project, true, IdeModalityType.MODELESS);
+        this.project = project;
+        this.fileModel = new ChangedFileTableModel();
+        this.streamingListener = new StreamingListener();
+        this.cancelAnalysis = cancelAnalysis;
+        setTitle("UT提示词助手");
+        init();
+        project.putUserData(ANALYSIS_DIALOG, this);
+    }
+
+    /**
+     * 项目中在分析开始时打开、尚未关闭的对话框；没有时返回 null
+     */
+    @Nullable
+    public static UTPromptDialog findAnalysisDialog(Project project) {
+        UTPromptDialog dialog = project.getUserData(ANALYSIS_DIALOG);
+        return dialog == null || dialog.isDisposed() ? null : dialog;
+    }
+
+    /**
+     * 传给分析过程的监听器，可以在任意线程回调
+     */
+    public AnalysisListener getAnalysisListener() {
+        return streamingListener == null ? AnalysisListener.NONE : streamingListener;
+    }
+
+    /**
+     * 分析完成：用最终结果（包括方法信息）替换逐批到达的文件，已经修改的勾选状态保留
+     */
+    public void complete(ChangeSet changes) {
+        if (analysisDone || isDisposed()) {
+            return;
+        }
+        analysisDone = true;
+        originalRangeCount = changes.getRangeCount();
+        fileModel.replaceAll(changes.coalesce(config.getRangeMergeGap()));
+        preview.filesReplaced();
+        statusLabel.setVisible(false);
+        showSkippedFiles(changes.getSkippedFiles());
+        updateFileTitle();
+    }
+
+    /**
+     * 分析没有结果或失败时关闭对话框，不再取消分析
+     */
+    public void dismiss() {
+        analysisDone = true;
+        if (!isDisposed()) {
+            close(CANCEL_EXIT_CODE);
+        }
+    }
+
+    /**
+     * 分析被取消（从状态栏取消、被新的分析取代等）：保留已经到达的文件并提示结果不完整，没有文件时关闭对话框
+     */
+    public void analysisCancelled() {
+        if (analysisDone || isDisposed()) {
+            return;
+        }
+        streamingListener.drain();
+        analysisDone = true;
+        analysisCancelled = true;
+        if (fileModel.getFileCount() == 0) {
+            close(CANCEL_EXIT_CODE);
+            return;
+        }
+        statusLabel.setText("分析已取消，列表中只有取消前已分析的 " + fileModel.getFileCount() + " 个文件");
+    }
+
+    @Override
+    protected void dispose() {
+        if (!analysisDone) {
+            analysisDone = true;
+            cancelAnalysis.run();
+        }
+        if (project.getUserData(ANALYSIS_DIALOG) == this) {
+            project.putUserData(ANALYSIS_DIALOG, null);
+        }
+        super.dispose();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        JPanel mainPanel = new JPanel();
+        mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));
+        preview = new PromptPreview(project, fileModel, previewArea, promptTextArea::getText, getDisposable());
+        
+        // 创建文件选择区域
+        JPanel filePanel = new JPanel(new BorderLayout());
+        fileBorder = BorderFactory.createTitledBorder("选择要生成单元测试的文件" + describeRangeCount());
+        filePanel.setBorder(fileBorder);
+        
+        // 添加全选/全不选按钮和过滤框
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton selectAllBtn = new JButton("全选");
+        JButton selectNoneBtn = new JButton("全不选");
+        SearchTextField filterField = new SearchTextField(false);
+        buttonPanel.add(selectAllBtn);
+        buttonPanel.add(selectNoneBtn);
+        buttonPanel.add(new JLabel("过滤:"));
+        buttonPanel.add(filterField);
+        
+        // 文件列表使用表格，只渲染可见的行，文件很多时也不会为每个文件创建组件
+        JBTable fileTable = new JBTable(fileModel);
+        fileTable.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        TableColumnModel columns = fileTable.getColumnModel();
+        columns.getColumn(ChangedFileTableModel.COLUMN_SELECTED).setMaxWidth(30);
+        columns.getColumn(ChangedFileTableModel.COLUMN_PATH).setPreferredWidth(320);
+        columns.getColumn(ChangedFileTableModel.COLUMN_COUNT).setMaxWidth(50);
+        columns.getColumn(ChangedFileTableModel.COLUMN_LOCATION).setPreferredWidth(230);
+        // 位置和路径可能很长，悬停时显示完整内容
+        DefaultTableCellRenderer tooltipRenderer = new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                Component component = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                setToolTipText(value == null ? null : value.toString());
+                return component;
+            }
+        };
+        columns.getColumn(ChangedFileTableModel.COLUMN_PATH).setCellRenderer(tooltipRenderer);
+        columns.getColumn(ChangedFileTableModel.COLUMN_LOCATION).setCellRenderer(tooltipRenderer);
+        
+        // 全选/全不选按钮事件
+        selectAllBtn.addActionListener(e -> {
+            fileModel.setAllSelected(true);
+            preview.selectionReset();
+        });
+        
+        selectNoneBtn.addActionListener(e -> {
+            fileModel.setAllSelected(false);
+            preview.selectionReset();
+        });
+        
+        filterField.addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull javax.swing.event.DocumentEvent e) {
+                fileModel.setFilter(filterField.getText());
+            }
+        });
+        
+        // 勾选状态变化时更新预览，过滤不影响预览
+        fileModel.addTableModelListener(e -> {
+            if (e.getColumn() == ChangedFileTableModel.COLUMN_SELECTED) {
+                preview.fileToggled(fileModel.getFileIndex(e.getFirstRow()));
+            }
+        });
+        
+        // 添加提示词编辑框变化监听器，预览在停止输入后才更新
+        promptTextArea.getDocument().addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull javax.swing.event.DocumentEvent e) {
+                preview.promptChanged();
+            }
+        });
+        
+        JScrollPane fileScrollPane = new JBScrollPane(fileTable);
+        fileScrollPane.setPreferredSize(new Dimension(600, 300));
+        
+        filePanel.add(buttonPanel, BorderLayout.NORTH);
+        filePanel.add(fileScrollPane, BorderLayout.CENTER);
+        // 分析进度，只在分析进行中显示
+        statusLabel.setVisible(!analysisDone);
+        skippedLabel.setVisible(false);
+        JPanel statusPanel = new JPanel(new GridLayout(0, 1));
+        statusPanel.add(statusLabel);
+        statusPanel.add(skippedLabel);
+        filePanel.add(statusPanel, BorderLayout.SOUTH);
+        
+        // 创建提示词编辑区域
+        JPanel promptPanel = new JPanel(new BorderLayout());
+        promptPanel.setBorder(BorderFactory.createTitledBorder("UT提示词 (可编辑)"));
+        
+        // 设置初始提示词
+        promptTextArea.setText(config.getEffectivePrompt());
+        promptTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        promptTextArea.setLineWrap(true);
+        promptTextArea.setWrapStyleWord(true);
+        JScrollPane promptScrollPane = new JScrollPane(promptTextArea);
+        promptScrollPane.setPreferredSize(new Dimension(600, 80));
+        
+        // 创建提示词按钮面板
+        JPanel promptButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton savePromptBtn = new JButton("💾 保存提示词");
+        JButton resetPromptBtn = new JButton("🔄 重置为默认");
+        JButton loadPromptBtn = new JButton("📂 重新加载提示词");
+        
+        promptButtonPanel.add(savePromptBtn);
+        promptButtonPanel.add(resetPromptBtn);
+        promptButtonPanel.add(loadPromptBtn);
+        
+        // 按钮事件处理
+        savePromptBtn.addActionListener(e -> savePrompt());
+        resetPromptBtn.addActionListener(e -> resetPrompt());
+        loadPromptBtn.addActionListener(e -> loadPrompt());
+        
+        promptPanel.add(promptButtonPanel, BorderLayout.NORTH);
+        promptPanel.add(promptScrollPane, BorderLayout.CENTER);
+        
+        // 创建预览区域
+        JPanel previewPanel = new JPanel(new BorderLayout());
+        previewPanel.setBorder(BorderFactory.createTitledBorder("预览 (将复制的内容)"));
+        
+        previewArea.setEditable(false);
+        previewArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JScrollPane previewScrollPane = new JScrollPane(previewArea);
+        previewPanel.add(previewScrollPane, BorderLayout.CENTER);
+        
+        // 创建按钮面板
+        JPanel copyPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton copyBtn = new JButton("📋 复制选中内容的UT提示词到剪贴板");
+        copyBtn.addActionListener(e -> copyToClipboard());
+        
+        JButton chunksBtn = new JButton("📦 分批复制 / 导出");
+        chunksBtn.addActionListener(e -> showChunks());
+        
+        JButton openCursorBtn = new JButton("🚀 在 Cursor 中打开");
+        openCursorBtn.addActionListener(e -> openInCursor());
+        
+        copyPanel.add(copyBtn);
+        copyPanel.add(chunksBtn);
+        copyPanel.add(openCursorBtn);
+        
+        // 组装主面板
+        mainPanel.add(filePanel);
+        mainPanel.add(Box.createVerticalStrut(10));
+        mainPanel.add(promptPanel);
+        mainPanel.add(Box.createVerticalStrut(10));
+        mainPanel.add(previewPanel);
+        mainPanel.add(Box.createVerticalStrut(10));
+        mainPanel.add(copyPanel);
+        
+        // 初始化预览；启用代码摘录时需要读取源文件，首次渲染在后台线程进行
+        preview.selectionReset();
+        
+        return mainPanel;
+    }
+    
+    /**
+     * 在列表下方提示没有分析的文件，完整列表放在悬停提示中
+     */
+    private void showSkippedFiles(List<ChangedFile> skippedFiles) {
+        if (skippedFiles.isEmpty()) {
+            skippedLabel.setVisible(false);
+            return;
+        }
+        StringBuilder tooltip = new StringBuilder("<html>");
+        for (int i = 0; i < skippedFiles.size(); i++) {
+            if (i == MAX_SKIPPED_TOOLTIP_FILES) {
+                tooltip.append("……另有 ").append(skippedFiles.size() - i).append(" 个文件");
+                break;
+            }
+            ChangedFile file = skippedFiles.get(i);
+            tooltip.append(StringUtil.escapeXmlEntities(file.getPath()))
+                .append(" (+").append(file.getAdded()).append(" -").append(file.getRemoved()).append(")<br>");
+        }
+        skippedLabel.setText("已跳过 " + skippedFiles.size() + " 个超出变更行数上限的文件（maxFileChangedLines / maxTotalChangedLines），悬停查看列表");
+        skippedLabel.setToolTipText(tooltip.append("</html>").toString());
+        skippedLabel.setVisible(true);
+    }
+
+    private void updateFileTitle() {
+        fileBorder.setTitle("选择要生成单元测试的文件" + describeRangeCount());
+        getContentPane().repaint();
+    }
+    
+    private String describeRangeCount() {
+        int rangeCount = fileModel.getRangeCount();
+        String summary = "（" + fileModel.getFileCount() + " 个文件，" + rangeCount + " 处变更";
+        if (rangeCount != originalRangeCount) {
+            summary += "，合并相近范围前 " + originalRangeCount + " 处";
+        }
+        return summary + "）";
+    }
+    
+    private void copyToClipboard() {
+        // 预览需要整体重建时等后台重建完成后再复制
+        preview.withText(this::copyToClipboard);
+    }
+
+    private void copyToClipboard(String content) {
+        if (content.trim().isEmpty()) {
+            JOptionPane.showMessageDialog(null, "没有选中任何文件！", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        // 超过单个提示词的 token 上限时建议分批复制
+        int maxTokens = config.getMaxPromptTokens();
+        int tokens = maxTokens > 0 ? TokenEstimator.estimate(content) : 0;
+        if (maxTokens > 0 && tokens > maxTokens) {
+            List<PromptAssembler.Chunk> chunks = assembleChunks();
+            int result = JOptionPane.showConfirmDialog(
+                null,
+                "内容约 " + tokens + " tokens，超过单个提示词的上限 " + maxTokens + "，可以拆成 " + chunks.size() + " 部分分批复制。\n"
+                    + "选择\"是\"分批复制，选择\"否\"仍然整体复制。",
+                "内容过长",
+                JOptionPane.YES_NO_CANCEL_OPTION
+            );
+            if (result == JOptionPane.YES_OPTION) {
+                new PromptChunksDialog(project, chunks).show();
+                return;
+            }
+            if (result != JOptionPane.NO_OPTION) {
+                return;
+            }
+        }
+        
+        Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+        StringSelection selection = new StringSelection(content);
+        clipboard.setContents(selection, null);
+        
+        String message = "内容已复制到剪贴板！";
+        if (!analysisDone) {
+            message += "\n分析尚未完成，只包含已分析的 " + fileModel.getSelectedCount() + " 个选中文件。";
+        } else if (analysisCancelled) {
+            message += "\n分析已被取消，只包含取消前已分析的 " + fileModel.getSelectedCount() + " 个选中文件。";
+        }
+        JOptionPane.showMessageDialog(null, message, "成功", JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    private void showChunks() {
+        if (fileModel.getSelectedCount() == 0) {
+            JOptionPane.showMessageDialog(null, "没有选中任何文件！", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        preview.withText(text -> new PromptChunksDialog(project, assembleChunks()).show());
+    }
+    
+    /**
+     * 按配置的 token 上限把提示词和选中文件的片段拆成一个或多个提示词；在 {@link PromptPreview#withText} 的回调中调用
+     */
+    private List<PromptAssembler.Chunk> assembleChunks() {
+        return PromptAssembler.assemble(promptTextArea.getText(), preview.selectedFragments(), config.getMaxPromptTokens());
+    }
+    
+    private void savePrompt() {
+        String currentPrompt = promptTextArea.getText().trim();
+        if (currentPrompt.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "提示词不能为空！", "警告", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        config.setCustomPrompt(currentPrompt);
+        config.setUseCustomPrompt(true);
+        
+        JOptionPane.showMessageDialog(null, "提示词已保存！", "成功", JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    private void resetPrompt() {
+        int result = JOptionPane.showConfirmDialog(
+            null, 
+            "确定要重置为默认提示词吗？这将覆盖当前的编辑内容。", 
+            "确认重置", 
+            JOptionPane.YES_NO_OPTION
+        );
+        
+        if (result == JOptionPane.YES_OPTION) {
+            config.resetToDefault();
+            promptTextArea.setText(SimplePromptConfig.DEFAULT_PROMPT);
+            JOptionPane.showMessageDialog(null, "已重置为默认提示词！", "成功", JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+    
+    private void loadPrompt() {
+        if (config.isUseCustomPrompt() && !config.getCustomPrompt().trim().isEmpty()) {
+            promptTextArea.setText(config.getCustomPrompt());
+            JOptionPane.showMessageDialog(null, "已加载保存的提示词！", "成功", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(null, "没有找到保存的提示词！", "提示", JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+    
+    private void openInCursor() {
+        // 获取当前项目路径
+        String projectPath = project.getBasePath();
+        if (projectPath == null) {
+            JOptionPane.showMessageDialog(null, "无法获取项目路径！", "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        // 构建 Cursor 命令，参数以数组传递，路径中包含空格也不会被拆开；在 macOS 上使用 open 命令打开 Cursor
+        String os = System.getProperty("os.name").toLowerCase();
+        List<String> cursorCommand = os.contains("mac")
+            ? List.of("open", "-a", "Cursor", projectPath)
+            : List.of("cursor", projectPath);
+        
+        // cursor 启动脚本可能一直不退出，而且结束它的进程树会连同编辑器一起关闭：
+        // 在后台线程启动后不等待、不结束进程，只在无法启动时提示
+        AppExecutorUtil.getAppExecutorService().execute(() -> launchCursor(projectPath, cursorCommand));
+    }
+    
+    private static void launchCursor(String projectPath, List<String> command) {
+        try {
+            new ProcessBuilder(command)
+                .directory(new File(projectPath))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(null, "正在 Cursor 中打开项目...", "成功", JOptionPane.INFORMATION_MESSAGE));
+        } catch (IOException ex) {
+            SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(null, "打开 Cursor 失败: " + ex.getMessage() + "\n\n请确保已安装 Cursor 编辑器", "错误", JOptionPane.ERROR_MESSAGE));
+        }
+    }
+    
+    /**
+     * 在分析线程上接收逐个文件的结果，每隔 {@link #DRAIN_INTERVAL_MILLIS} 在 EDT 上批量加入列表，
+     * 同时根据已分析的文件数和耗时估算剩余时间
+     */
+    private final class StreamingListener implements AnalysisListener {
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger plannedFiles = new AtomicInteger();
+        private final AtomicInteger analyzedFiles = new AtomicInteger();
+        // 尚未加入列表的文件及其合并前的范围数
+        private final ConcurrentLinkedQueue<Arrival> arrived = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+        @Override
+        public void filesPlanned(int fileCount) {
+            plannedFiles.addAndGet(fileCount);
+            scheduleDrain();
+        }
+
+        @Override
+        public void fileAnalyzed(String path, ChangeRanges ranges) {
+            analyzedFiles.incrementAndGet();
+            if (ranges.size() > 0) {
+                ChangedFileTableModel.Row row = new ChangedFileTableModel.Row(path, ranges.coalesce(config.getRangeMergeGap()));
+                // 在分析线程上预先生成片段，启用代码摘录时读取文件不占用 EDT
+                preview.fragment(row);
+                arrived.add(new Arrival(row, ranges.size()));
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled.compareAndSet(false, true)) {
+                AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> SwingUtilities.invokeLater(this::drain), DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void drain() {
+            drainScheduled.set(false);
+            if (analysisDone || isDisposed()) {
+                return;
+            }
+            List<ChangedFileTableModel.Row> rows = new ArrayList<>();
+            Arrival arrival;
+            while ((arrival = arrived.poll()) != null) {
+                originalRangeCount += arrival.originalRangeCount;
+                rows.add(arrival.row);
+            }
+            fileModel.append(rows);
+            preview.filesAppended();
+            statusLabel.setText(describeProgress());
+            updateFileTitle();
+        }
+
+        private String describeProgress() {
+            int analyzed = analyzedFiles.get();
+            int planned = plannedFiles.get();
+            if (planned == 0) {
+                return "正在分析... 已分析 " + analyzed + " 个文件";
+            }
+            String progress = "正在分析... 已分析 " + analyzed + " / " + planned + " 个文件";
+            if (analyzed > 0 && analyzed < planned) {
+                long remainingNanos = (System.nanoTime() - startNanos) / analyzed * (planned - analyzed);
+                progress += "，预计剩余 " + Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos)) + " 秒";
+            }
+            return progress;
+        }
+    }
+    
+    private static final class Arrival {
+        final ChangedFileTableModel.Row row;
+        final int originalRangeCount;
+        
+        Arrival(ChangedFileTableModel.Row row, int originalRangeCount) {
+            this.row = row;
+            this.originalRangeCount = originalRangeCount;
+        }
+    }
+}
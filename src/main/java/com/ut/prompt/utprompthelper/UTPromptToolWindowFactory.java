@@ -42,7 +42,7 @@ public class UTPromptToolWindowFactory implements ToolWindowFactory {
         JButton globalBtn = new JButton("获取UT提示词（全局）");
         globalBtn.setAlignmentX(Component.LEFT_ALIGNMENT);
         globalBlock.add(globalBtn);
-        JLabel globalHint = new JLabel("比较当前分支与 master，扫描非测试 Java 文件。");
+        JLabel globalHint = new JLabel("比较当前分支与 " + SimplePromptConfig.getInstance().getBaseBranch() + "，扫描非测试 Java 文件。");
         globalHint.setForeground(new Color(110, 110, 110));
         globalHint.setAlignmentX(Component.LEFT_ALIGNMENT);
         globalBlock.add(Box.createVerticalStrut(4));
@@ -55,7 +55,7 @@ public class UTPromptToolWindowFactory implements ToolWindowFactory {
         JButton currentFileBtn = new JButton("生成UT提示词（当前文件）");
         currentFileBtn.setAlignmentX(Component.LEFT_ALIGNMENT);
         fileBlock.add(currentFileBtn);
-        JLabel fileHint = new JLabel("分析编辑器选中文件与 master 的差异。");
+        JLabel fileHint = new JLabel("分析编辑器选中文件与 " + SimplePromptConfig.getInstance().getBaseBranch() + " 的差异。");
         fileHint.setForeground(new Color(110, 110, 110));
         fileHint.setAlignmentX(Component.LEFT_ALIGNMENT);
         fileBlock.add(Box.createVerticalStrut(4));
@@ -0,0 +1,205 @@
+package com.ut.prompt.utprompthelper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 对比 {@link HunkClassifier#isCommentedOutChange} 与改为哈希多重集合之前基于字符串列表的实现
+ */
+public class CommentedOutChangeTest {
+
+    private static final String[] CODE = {
+        "total += tax;",
+        "total   +=   tax;",
+        "\ttotal += tax;",
+        "return total;",
+        "return  total ;",
+        "if (rate > 0) {",
+        "}",
+        "log.info(\"x\");",
+        "",
+        "   ",
+        "\t",
+    };
+
+    @Test
+    public void duplicateLinesNeedOneCommentEach() {
+        List<String> once = List.of(
+            "-        total += tax;",
+            "-        total += tax;",
+            "+        // total += tax;");
+        assertFalse(HunkClassifier.isCommentedOutChange(once));
+        assertEquals(legacy(once), HunkClassifier.isCommentedOutChange(once));
+
+        List<String> twice = List.of(
+            "-        total += tax;",
+            "-        total += tax;",
+            "+        // total += tax;",
+            "+        //total+=tax;");
+        assertTrue(HunkClassifier.isCommentedOutChange(twice));
+        assertEquals(legacy(twice), HunkClassifier.isCommentedOutChange(twice));
+    }
+
+    @Test
+    public void whitespaceOnlyLinesAreIgnored() {
+        List<String> lines = List.of(
+            "-   ",
+            "-        return total;",
+            "-\t",
+            "+",
+            "+        // return total;",
+            "+   ");
+        assertTrue(HunkClassifier.isCommentedOutChange(lines));
+        assertEquals(legacy(lines), HunkClassifier.isCommentedOutChange(lines));
+
+        List<String> onlyWhitespaceRemoved = List.of("-   ", "+// return total;");
+        assertEquals(legacy(onlyWhitespaceRemoved), HunkClassifier.isCommentedOutChange(onlyWhitespaceRemoved));
+    }
+
+    @Test
+    public void addedCodeLineIsNotCommentedOut() {
+        List<String> lines = List.of(
+            "-        total += tax;",
+            "+        // total += tax;",
+            "+        total += fee;");
+        assertFalse(HunkClassifier.isCommentedOutChange(lines));
+        assertEquals(legacy(lines), HunkClassifier.isCommentedOutChange(lines));
+
+        List<String> withImport = List.of(
+            "-        total += tax;",
+            "+import java.util.List;",
+            "+        // total += tax;");
+        assertTrue(HunkClassifier.isCommentedOutChange(withImport));
+        assertEquals(legacy(withImport), HunkClassifier.isCommentedOutChange(withImport));
+    }
+
+    @Test
+    public void matchesLegacyImplementationOnRandomHunks() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20_000; round++) {
+            List<String> lines = randomHunk(random);
+            assertEquals(lines.toString(), legacy(lines), HunkClassifier.isCommentedOutChange(lines));
+        }
+    }
+
+    private static List<String> randomHunk(Random random) {
+        List<String> lines = new ArrayList<>();
+        int removed = random.nextInt(4);
+        for (int i = 0; i < removed; i++) {
+            lines.add("-" + indent(random) + CODE[random.nextInt(CODE.length)]);
+        }
+        int added = random.nextInt(4);
+        for (int i = 0; i < added; i++) {
+            String code = CODE[random.nextInt(CODE.length)];
+            switch (random.nextInt(6)) {
+                case 0:
+                    lines.add("+" + indent(random) + "//" + (random.nextBoolean() ? " " : "") + code);
+                    break;
+                case 1:
+                    lines.add("+" + indent(random) + "/* " + code + " */");
+                    break;
+                case 2:
+                    lines.add("+" + indent(random) + "* " + code);
+                    break;
+                case 3:
+                    // 新增的代码行，旧实现直接判定为不是注释掉的变更
+                    lines.add("+" + indent(random) + code);
+                    break;
+                case 4:
+                    lines.add("+" + indent(random) + "import java.util.List;");
+                    break;
+                default:
+                    lines.add("+" + indent(random));
+                    break;
+            }
+        }
+        return lines;
+    }
+
+    private static String indent(Random random) {
+        return " ".repeat(random.nextInt(3) * 4) + (random.nextInt(4) == 0 ? "\t" : "");
+    }
+
+    // ---- 旧实现 ----
+
+    private static boolean legacy(List<String> hunkLines) {
+        List<String> removedLines = new ArrayList<>();
+        List<String> addedCommentLines = new ArrayList<>();
+
+        for (String line : hunkLines) {
+            if (line.startsWith("-")) {
+                String content = line.substring(1);
+                if (!content.trim().isEmpty()) {
+                    removedLines.add(content);
+                }
+            } else if (line.startsWith("+")) {
+                String content = line.substring(1);
+                if (!isImportOrComment(content)) {
+                    return false;
+                }
+                addedCommentLines.add(content);
+            }
+        }
+
+        if (removedLines.isEmpty() || addedCommentLines.isEmpty()) {
+            return false;
+        }
+
+        List<String> availableComments = new ArrayList<>();
+        for (String comment : addedCommentLines) {
+            availableComments.add(normalizeForComparison(normalizeCommentContent(comment)));
+        }
+        for (String removed : removedLines) {
+            String normalizedRemoved = normalizeForComparison(removed.trim());
+            if (normalizedRemoved.isEmpty()) {
+                continue;
+            }
+            if (!availableComments.remove(normalizedRemoved)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isImportOrComment(String content) {
+        String trimmed = content.trim();
+        return trimmed.isEmpty()
+            || trimmed.startsWith("import ") || trimmed.startsWith("package ")
+            || trimmed.startsWith("//") || trimmed.startsWith("/*") || trimmed.startsWith("*");
+    }
+
+    private static String normalizeCommentContent(String content) {
+        String trimmed = content.trim();
+        if (trimmed.startsWith("//")) {
+            trimmed = trimmed.substring(2).trim();
+        }
+        if (trimmed.startsWith("/*")) {
+            trimmed = trimmed.substring(2).trim();
+        }
+        if (trimmed.startsWith("*")) {
+            trimmed = trimmed.substring(1).trim();
+        }
+        if (trimmed.endsWith("*/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 2).trim();
+        }
+        return trimmed;
+    }
+
+    private static String normalizeForComparison(String content) {
+        StringBuilder sb = new StringBuilder(content.length());
+        for (int i = 0; i < content.length(); i++) {
+            char ch = content.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+}
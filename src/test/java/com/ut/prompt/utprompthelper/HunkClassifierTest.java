@@ -0,0 +1,59 @@
+package com.ut.prompt.utprompthelper;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HunkClassifierTest {
+
+    @Test
+    public void importAndCommentChangesAreNotSignificant() {
+        assertFalse(HunkClassifier.isSignificant(List.of(
+            "+import java.util.List;",
+            "-import java.util.ArrayList;",
+            "+// 计算总价",
+            "+")));
+    }
+
+    @Test
+    public void codeChangeIsSignificant() {
+        assertTrue(HunkClassifier.isSignificant(List.of(
+            "-        return total;",
+            "+        return total * rate;")));
+    }
+
+    @Test
+    public void hunkStartingInsideJavadocIsNotSignificant() {
+        assertFalse(HunkClassifier.isSignificant(List.of(
+            "+     * 按汇率换算后的总价",
+            "+     *",
+            "+     * @param rate 汇率",
+            "+     */")));
+    }
+
+    @Test
+    public void codeAfterJavadocTailIsSignificant() {
+        assertTrue(HunkClassifier.isSignificant(List.of(
+            "+     * @return 总价",
+            "+     */",
+            "+    int total() {")));
+    }
+
+    @Test
+    public void continuedMultiplicationIsSignificant() {
+        // 第一行以 * 开头只是乘法的续行，后面没有注释结束符
+        assertTrue(HunkClassifier.isSignificant(List.of(
+            "+            * rate;",
+            "+        return total;")));
+    }
+
+    @Test
+    public void commentedOutCodeIsNotSignificant() {
+        assertFalse(HunkClassifier.isSignificant(List.of(
+            "-        total += tax;",
+            "+        // total += tax;")));
+    }
+}